@@ -1,48 +1,87 @@
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.Stack;
 
 class Automaton {
-    // Maps each state to a set of states it can transition to, for regular transitions
-    private HashMap<Integer, Set<Integer>> transitions;
-    // A set containing all the end (accepting) states of the automaton
-    private HashSet<Integer> endStates;
+    // Marks a state that has no recorded regular transition
+    static final int NO_STATE = -1;
+
+    // Successor of each state under the single input letter, or NO_STATE if none was recorded
+    private int[] successors;
+    // Additional successors of states with more than one regular transition (NFA form only, null otherwise)
+    private int[][] extraSuccessors;
+    // A bitset containing all the end (accepting) states of the automaton
+    private BitSet endStates;
     // The total number of states in the automaton
     private int totalStates;
-    // A string representation or identifier of the current automaton
+    // A string representation or identifier of the current automaton; automata read by MappedAutomatonReader
+    // start without one and derive their definition string on first request, or a name such as
+    // "100-state DFA" if the text format cannot encode them
     private String currentAutomata;
-    // Maps each state to a set of states it can transition to via epsilon (ε) transitions
-    private HashMap<Integer, Set<Integer>> epsilonTransitions;
+    // Targets of the epsilon (ε) transitions of each state (NFA form only, null otherwise)
+    private int[][] epsilonTransitions;
+    // Epsilon closure of each state as a bitset, computed on first use and dropped whenever the automaton changes;
+    // a null entry stands for a state whose closure is just the state itself. Volatile so that an automaton
+    // that is no longer modified can be read from several threads, which at worst compute the table twice
+    private volatile BitSet[] epsilonClosures;
+    // Canonical form of the accepted language for membership queries, computed on first use and dropped
+    // whenever the automaton changes; volatile for the same reason as epsilonClosures
+    private volatile LassoForm language;
 
     // Constructor to initialize the automaton with a given number of states and its identifier
     public Automaton(int totalStates, String currentAutomata) {
         this.totalStates = totalStates;
-        this.transitions = new HashMap<>();
-        this.endStates = new HashSet<>();
+        this.successors = new int[Math.max(totalStates, 1)];
+        Arrays.fill(this.successors, NO_STATE);
+        this.endStates = new BitSet(totalStates);
+        this.currentAutomata = currentAutomata;
+    }
+
+    // Constructor for a complete DFA given as a successor table and a bitset of end states (both are taken over)
+    Automaton(int[] successors, BitSet endStates, String currentAutomata) {
+        this.totalStates = successors.length;
+        this.successors = successors;
+        this.endStates = endStates;
         this.currentAutomata = currentAutomata;
-        this.epsilonTransitions = new HashMap<>();
     }
 
     // Adds a transition from one state to another
     public void addTransition(int fromState, int toState) {
-        transitions.computeIfAbsent(fromState, k -> new HashSet<>()).add(toState);
+        ensureCapacity(Math.max(fromState, toState));
+        language = null;
+        int current = successors[fromState];
+        if (current == NO_STATE) {
+            successors[fromState] = toState;
+        } else if (current != toState) {
+            if (extraSuccessors == null) {
+                extraSuccessors = new int[successors.length][];
+            }
+            extraSuccessors[fromState] = appendDistinct(extraSuccessors[fromState], toState);
+        }
     }
 
     // Marks a state as an end (accepting) state
     public void addEndState(int state) {
-        endStates.add(state);
+        ensureCapacity(state);
+        language = null;
+        endStates.set(state);
     }
 
     // Checks if at least half of the states are accepting states
     public boolean hasUpToHalfEndStates() {
         int halfEndStates = totalStates / 2;
-    
+
         if (totalStates % 2 == 1) {
-            return endStates.size() == halfEndStates;
+            return getEndStateCount() == halfEndStates;
         } else {
-            return endStates.size() == halfEndStates;
+            return getEndStateCount() == halfEndStates;
         }
     }
 
@@ -53,37 +92,77 @@ class Automaton {
 
     // Creates a copy of the current automaton
     public Automaton cloneAutomaton() {
-        Automaton cloned = new Automaton(this.totalStates, this.currentAutomata);
-        for (Map.Entry<Integer, Set<Integer>> entry : this.transitions.entrySet()) {
-            cloned.transitions.put(entry.getKey(), new HashSet<>(entry.getValue()));
-        }
-        for (Map.Entry<Integer, Set<Integer>> entry : this.epsilonTransitions.entrySet()) {
-            cloned.epsilonTransitions.put(entry.getKey(), new HashSet<>(entry.getValue()));
-        }
-        cloned.endStates = new HashSet<>(this.endStates);
+        Automaton cloned = new Automaton(this.successors.clone(), (BitSet) this.endStates.clone(), getCurrentAutomata());
+        cloned.totalStates = this.totalStates;
+        cloned.extraSuccessors = deepCopy(this.extraSuccessors);
+        cloned.epsilonTransitions = deepCopy(this.epsilonTransitions);
         return cloned;
     }
 
-    // Retrieves the set of transitions for a given state
-    public HashMap<Integer, Set<Integer>> getTransitions() {
-        return transitions;
+    // Retrieves a read-only view of the transitions of every state
+    public Map<Integer, Set<Integer>> getTransitions() {
+        return new TransitionView();
+    }
+
+    // Retrieves a read-only view of the end (accepting) states
+    public Set<Integer> getEndStates() {
+        return new EndStateView();
+    }
+
+    // Returns the number of end (accepting) states
+    public int getEndStateCount() {
+        return endStates.cardinality();
+    }
+
+    // Checks whether a single state is an end (accepting) state
+    public boolean isEndState(int state) {
+        return state >= 0 && endStates.get(state);
+    }
+
+    // Returns the first successor of a state, or NO_STATE if the state has no regular transition
+    public int getSuccessor(int state) {
+        return state < successors.length ? successors[state] : NO_STATE;
+    }
+
+    // Returns the number of regular successors of a state
+    public int getSuccessorCount(int state) {
+        if (getSuccessor(state) == NO_STATE) {
+            return 0;
+        }
+        int[] extra = extraSuccessors == null ? null : extraSuccessors[state];
+        return extra == null ? 1 : 1 + extra.length;
+    }
+
+    // Returns the index-th regular successor of a state, in insertion order
+    public int getSuccessor(int state, int index) {
+        return index == 0 ? successors[state] : extraSuccessors[state][index - 1];
+    }
+
+    // Returns the targets of the epsilon transitions of a state (the returned array must not be modified)
+    public int[] getEpsilonTargets(int state) {
+        if (epsilonTransitions == null || state >= epsilonTransitions.length || epsilonTransitions[state] == null) {
+            return EMPTY;
+        }
+        return epsilonTransitions[state];
     }
 
-    // Retrieves the set of end (accepting) states
-    public HashSet<Integer> getEndStates() {
-        return endStates;
+    // Checks whether the automaton is in DFA form: no epsilon transitions and at most one successor per state
+    public boolean isDeterministic() {
+        return epsilonTransitions == null && extraSuccessors == null;
     }
 
     // Increments the total number of states by one
     public void incrementTotalStates() {
         this.totalStates++;
+        language = null;
     }
 
     // Returns a string representation of the automaton, including its transitions and end states
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Loaded automaton: ").append(currentAutomata).append("\n");
+        sb.append("Loaded automaton: ").append(getCurrentAutomata()).append("\n");
+        Map<Integer, Set<Integer>> transitions = getTransitions();
         if (!transitions.isEmpty()) {
             sb.append("Transitions:\n");
             transitions.forEach((fromState, toStates) -> {
@@ -92,59 +171,105 @@ class Automaton {
         } else {
             sb.append("No regular transitions recorded.\n");
         }
-        if (!epsilonTransitions.isEmpty()) {
+        if (epsilonTransitions != null) {
             sb.append("Epsilon Transitions:\n");
-            epsilonTransitions.forEach((fromState, toStates) -> {
-                toStates.forEach(toState -> sb.append("State ").append(fromState).append(" -> ε -> ").append(toState).append("\n"));
-            });
+            for (int fromState = 0; fromState < epsilonTransitions.length; fromState++) {
+                for (int toState : getEpsilonTargets(fromState)) {
+                    sb.append("State ").append(fromState).append(" -> ε -> ").append(toState).append("\n");
+                }
+            }
         } else {
             sb.append("No epsilon transitions.\n");
         }
-        sb.append("End states: ").append(endStates).append("\n");
+        sb.append("End states: ").append(getEndStates()).append("\n");
         return sb.toString();
     }
     public String toCompactString() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Automaton ID: ").append(currentAutomata).append(" | Transitions: ");
-        transitions.forEach((from, toSet) -> {
+        sb.append("Automaton ID: ").append(getCurrentAutomata()).append(" | Transitions: ");
+        getTransitions().forEach((from, toSet) -> {
             sb.append(from).append("->").append(toSet).append(" ");
         });
-        sb.append("| End States: ").append(endStates);
+        sb.append("| End States: ").append(getEndStates());
         return sb.toString().trim();
     }
 
     // Retrieves the identifier of the current automaton
     public String getCurrentAutomata() {
+        if (currentAutomata == null) {
+            currentAutomata = AutomatonLoader.hasDefinition(this) ? AutomatonLoader.toDefinition(this)
+                    : totalStates + "-state DFA";
+        }
         return currentAutomata;
     }
 
     // Adds an epsilon transition from one state to another
     public void addEpsilonTransition(int fromState, int toState) {
-        epsilonTransitions.computeIfAbsent(fromState, k -> new HashSet<>()).add(toState);
+        ensureCapacity(Math.max(fromState, toState));
+        epsilonClosures = null;
+        language = null;
+        if (epsilonTransitions == null) {
+            epsilonTransitions = new int[successors.length][];
+        }
+        epsilonTransitions[fromState] = appendDistinct(epsilonTransitions[fromState], toState);
     }
 
-    // Computes the epsilon closure of a given set of states, 
+    // Computes the epsilon closure of a given set of states,
     // which is the set of states reachable from any state in the set including the state itself
     public Set<Integer> epsilonClosure(Set<Integer> states) {
-        Set<Integer> closure = new HashSet<>(states);
-        Stack<Integer> stack = new Stack<>();
-        states.forEach(stack::push);
-        while (!stack.isEmpty()) {
-            int currentState = stack.pop();
-            Set<Integer> epsilonTargets = this.epsilonTransitions.getOrDefault(currentState, new HashSet<>());
-            for (Integer target : epsilonTargets) {
-                if (closure.add(target)) {
-                    stack.push(target);
-                }
-            }
+        BitSet closure = new BitSet(successors.length);
+        for (int state : states) {
+            addEpsilonClosure(state, closure);
+        }
+        Set<Integer> result = new HashSet<>();
+        closure.stream().forEach(result::add);
+        return result;
+    }
+
+    // Adds the epsilon closure of a single state to the given bitset, without allocating
+    public void addEpsilonClosure(int state, BitSet target) {
+        BitSet[] closures = epsilonClosures;
+        if (closures == null) {
+            closures = computeEpsilonClosures();
+        }
+        if (state < closures.length && closures[state] != null) {
+            target.or(closures[state]);
+        } else {
+            target.set(state);
+        }
+    }
+
+    // Checks whether the automaton accepts a^length. The first query computes the tail/cycle form of the
+    // language (for an NFA, such as the result of square, plus or concatenate, from its subset path
+    // without building the DFA); every query then takes constant time, however large the length
+    public boolean accepts(long length) {
+        return getLanguage().accepts(length);
+    }
+
+    // Checks a^lengths[i] for every i and returns the indexes of the accepted ones
+    public BitSet accepts(long[] lengths) {
+        return getLanguage().accepts(lengths);
+    }
+
+    // Returns the canonical form of the accepted language
+    public LassoForm getLanguage() {
+        LassoForm form = language;
+        if (form == null) {
+            form = isDeterministic() ? UnaryMinimizer.minimize(this) : UnaryDeterminizer.language(this);
+            language = form;
         }
-        return closure;
+        return form;
+    }
+
+    // Checks if any state of the given bitset is an accepting state
+    public boolean containsEndState(BitSet states) {
+        return endStates.intersects(states);
     }
 
     // Checks if any of the given states is an accepting state
     public boolean isAcceptingState(Set<Integer> states) {
         for (Integer state : states) {
-            if (this.endStates.contains(state)) {
+            if (isEndState(state)) {
                 return true;
             }
         }
@@ -153,11 +278,189 @@ class Automaton {
 
     // Retrieves the transitions for a specific state
     public Set<Integer> getTransitions(Integer state) {
-        return transitions.getOrDefault(state, new HashSet<>());
+        int count = getSuccessorCount(state);
+        if (count == 0) {
+            return Collections.emptySet();
+        }
+        if (count == 1) {
+            return Collections.singleton(successors[state]);
+        }
+        Set<Integer> targets = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            targets.add(getSuccessor(state, i));
+        }
+        return targets;
     }
 
     // Sets the total number of states in the automaton
     public void setTotalStates(int totalStates) {
         this.totalStates = totalStates;
-    }  
-}
\ No newline at end of file
+        language = null;
+    }
+
+    private static final int[] EMPTY = new int[0];
+
+    // Computes the epsilon closure of every state that has epsilon transitions, with one depth-first search per state
+    private BitSet[] computeEpsilonClosures() {
+        BitSet[] closures = new BitSet[successors.length];
+        if (epsilonTransitions != null) {
+            int[] stack = new int[successors.length];
+            for (int state = 0; state < epsilonTransitions.length; state++) {
+                if (epsilonTransitions[state] == null) {
+                    continue;
+                }
+                BitSet closure = new BitSet(successors.length);
+                closure.set(state);
+                int size = 0;
+                stack[size++] = state;
+                while (size > 0) {
+                    for (int target : getEpsilonTargets(stack[--size])) {
+                        if (!closure.get(target)) {
+                            closure.set(target);
+                            stack[size++] = target;
+                        }
+                    }
+                }
+                closures[state] = closure;
+            }
+        }
+        epsilonClosures = closures;
+        return closures;
+    }
+
+    // Grows the per-state tables so that the given state can be stored
+    private void ensureCapacity(int state) {
+        if (state < successors.length) {
+            return;
+        }
+        int capacity = Math.max(state + 1, successors.length * 2);
+        int oldLength = successors.length;
+        successors = Arrays.copyOf(successors, capacity);
+        Arrays.fill(successors, oldLength, capacity, NO_STATE);
+        if (extraSuccessors != null) {
+            extraSuccessors = Arrays.copyOf(extraSuccessors, capacity);
+        }
+        if (epsilonTransitions != null) {
+            epsilonTransitions = Arrays.copyOf(epsilonTransitions, capacity);
+        }
+    }
+
+    // Appends a value to a small array unless it is already present
+    private static int[] appendDistinct(int[] values, int value) {
+        if (values == null) {
+            return new int[] { value };
+        }
+        for (int existing : values) {
+            if (existing == value) {
+                return values;
+            }
+        }
+        int[] grown = Arrays.copyOf(values, values.length + 1);
+        grown[values.length] = value;
+        return grown;
+    }
+
+    private static int[][] deepCopy(int[][] table) {
+        if (table == null) {
+            return null;
+        }
+        int[][] copy = new int[table.length][];
+        for (int i = 0; i < table.length; i++) {
+            copy[i] = table[i] == null ? null : table[i].clone();
+        }
+        return copy;
+    }
+
+    // Read-only map view over the successor tables, keyed by states that have at least one transition
+    private class TransitionView extends AbstractMap<Integer, Set<Integer>> {
+        @Override
+        public Set<Integer> get(Object key) {
+            return key instanceof Integer && getSuccessor((Integer) key) != NO_STATE ? getTransitions((Integer) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && getSuccessor((Integer) key) != NO_STATE;
+        }
+
+        @Override
+        public Set<Entry<Integer, Set<Integer>>> entrySet() {
+            return new AbstractSet<Entry<Integer, Set<Integer>>>() {
+                @Override
+                public Iterator<Entry<Integer, Set<Integer>>> iterator() {
+                    return new Iterator<Entry<Integer, Set<Integer>>>() {
+                        private int next = advance(0);
+
+                        private int advance(int from) {
+                            while (from < successors.length && successors[from] == NO_STATE) {
+                                from++;
+                            }
+                            return from;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < successors.length;
+                        }
+
+                        @Override
+                        public Entry<Integer, Set<Integer>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int state = next;
+                            next = advance(next + 1);
+                            return new SimpleImmutableEntry<>(state, getTransitions(state));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (int successor : successors) {
+                        if (successor != NO_STATE) {
+                            size++;
+                        }
+                    }
+                    return size;
+                }
+            };
+        }
+    }
+
+    // Read-only set view over the end state bitset
+    private class EndStateView extends AbstractSet<Integer> {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && isEndState((Integer) o);
+        }
+
+        @Override
+        public int size() {
+            return endStates.cardinality();
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<Integer>() {
+                private int next = endStates.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public Integer next() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    int state = next;
+                    next = endStates.nextSetBit(next + 1);
+                    return state;
+                }
+            };
+        }
+    }
+}
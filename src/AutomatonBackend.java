@@ -0,0 +1,26 @@
+// Engine behind AutomatonOperations.convertToDFA and minimizeDFA. The native engine is the project's
+// own lasso determinizer and minimizer, the brics engine runs dk.brics.automaton (lib/automaton-1.12-4.jar)
+// through BricsAdapter. Both return complete DFAs whose states are numbered along the path from the start
+// state, so their results can be compared state for state.
+interface AutomatonBackend {
+
+    String getName();
+
+    // Converts a unary NFA into a DFA
+    Automaton convertToDFA(Automaton nfa);
+
+    // Minimizes a DFA
+    Automaton minimizeDFA(Automaton dfa);
+
+    // Returns the backend with the given name, "native" or "brics"
+    static AutomatonBackend forName(String name) {
+        switch (name) {
+            case "native":
+                return new NativeBackend();
+            case "brics":
+                return new BricsBackend();
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + name + " (expected native or brics)");
+        }
+    }
+}
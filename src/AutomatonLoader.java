@@ -4,46 +4,53 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 class AutomatonLoader {
 
+    // Largest state number the text format can encode, '~'
+    static final int MAX_TEXT_STATE = '~' - '0';
+
     // Load automata from a file, each line representing an automaton
     public List<Automaton> loadAutomataFromFile(String filename) throws IOException {
+        long start = Instrumentation.start();
         List<Automaton> automata = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            // Read each line from the file and parse it into an automaton
-            while ((line = reader.readLine()) != null) {
-                Automaton automaton = parseAutomaton(line);
-                if (automaton != null) {
-                    automata.add(automaton);
-                    // System.out.println("Loaded automaton: " + automaton);
-                } else {
-                    System.out.println("Failed to parse automaton from line: " + line);
-                }
-            }
+        try (AutomatonSource reader = openAutomataFile(filename)) {
+            reader.forEachRemaining(automata::add);
         }
+        Instrumentation.end(Instrumentation.Phase.LOAD, start);
         return automata;
     }
 
+    // Open a file for reading its automata one at a time, so that processing can start on the first
+    // automaton and memory use does not depend on the file size; both the text and the binary format are accepted,
+    // and a generator spec such as "gen-minimal-20" generates the automata instead of reading them
+    public AutomatonSource openAutomataFile(String filename) throws IOException {
+        if (UnaryDfaGenerator.isSpec(filename)) {
+            return UnaryDfaGenerator.fromSpec(filename).automata();
+        }
+        if (BinaryAutomatonFile.isBinaryFile(filename)) {
+            return new BinaryAutomatonFile(filename).records();
+        }
+        return new MappedAutomatonReader(filename);
+    }
+
     // Parse a string definition into an Automaton object
-    private Automaton parseAutomaton(String definition) {
+    Automaton parseAutomaton(String definition) {
         int totalStates = definition.length() / 2;
-        Automaton automaton = new Automaton(totalStates, definition);
+        int[] successors = new int[totalStates];
+        BitSet endStates = new BitSet(totalStates);
 
         // Iterate through the state transitions and end states
         for (int i = 0; i < totalStates; i++) {
-            int toState = charToStateNumber(definition.charAt(i));
-            boolean isEndState = definition.charAt(totalStates + i) == 't';
-
-            automaton.addTransition(i, toState);
-            if (isEndState) {
-                automaton.addEndState(i);
+            successors[i] = charToStateNumber(definition.charAt(i));
+            if (definition.charAt(totalStates + i) == 't') {
+                endStates.set(i);
             }
         }
 
-        return automaton;
+        return new Automaton(successors, endStates, definition);
     }
 
     // Load automaton definitions from a file where each relevant line starts with "Loaded automaton: "
@@ -61,6 +68,23 @@ class AutomatonLoader {
         return definitions;
     }
 
+    // Load automata from a file where each relevant line starts with "Loaded automaton: ",
+    // parsing every definition as it is read instead of collecting the definitions first
+    public List<Automaton> loadAutomataFromDefinitionsFile(String filename) throws IOException {
+        long start = Instrumentation.start();
+        List<Automaton> automata = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Loaded automaton: ")) {
+                    automata.add(parseAutomaton(line.substring(18).trim()));
+                }
+            }
+        }
+        Instrumentation.end(Instrumentation.Phase.LOAD, start);
+        return automata;
+    }
+
     // Parse a list of string definitions into a list of Automaton objects
     public List<Automaton> parseAutomata(List<String> definitions) {
         List<Automaton> automata = new ArrayList<>();
@@ -70,28 +94,52 @@ class AutomatonLoader {
         return automata;
     }
 
-    // Convert a character to a state number based on predefined rules
-    private int charToStateNumber(char c) {
-        if (c >= '0' && c <= '9') {
-            return c - '0';
+    // Convert a character to a state number based on predefined rules: states 0-15 are '0'-'9' and ':;<=>?',
+    // and larger automata continue through the printable ASCII characters after them, '@' for 16 up to '~' for 78
+    static int charToStateNumber(char c) {
+        if (c < '0' || c > '0' + MAX_TEXT_STATE) {
+            throw new IllegalArgumentException("Unexpected character: " + c);
         }
-        switch (c) {
-            case ':': return 10;
-            case ';': return 11;
-            case '<': return 12;
-            case '=': return 13;
-            case '>': return 14;
-            case '?': return 15;
-            default:
-                throw new IllegalArgumentException("Unexpected character: " + c);
+        return c - '0';
+    }
+
+    // Convert a state number back to its character, the inverse of charToStateNumber
+    static char stateNumberToChar(int state) {
+        if (state < 0 || state > MAX_TEXT_STATE) {
+            throw new IllegalArgumentException("State number out of range for the text format: " + state);
+        }
+        return (char) ('0' + state);
+    }
+
+    // Build the dataset definition string of a DFA: its successors followed by one t/f flag per state
+    static String toDefinition(Automaton automaton) {
+        int totalStates = automaton.getTotalStates();
+        StringBuilder sb = new StringBuilder(totalStates * 2);
+        for (int i = 0; i < totalStates; i++) {
+            sb.append(stateNumberToChar(automaton.getSuccessor(i)));
+        }
+        for (int i = 0; i < totalStates; i++) {
+            sb.append(automaton.isEndState(i) ? 't' : 'f');
+        }
+        return sb.toString();
+    }
+
+    // Checks whether toDefinition can encode a DFA: every state has a successor the text format can write
+    static boolean hasDefinition(Automaton automaton) {
+        for (int i = 0; i < automaton.getTotalStates(); i++) {
+            int successor = automaton.getSuccessor(i);
+            if (successor < 0 || successor > MAX_TEXT_STATE) {
+                return false;
+            }
         }
+        return true;
     }
 
     // Filter automata based on the desired number of end states
     public List<Automaton> filterAutomataByEndStates(List<Automaton> automata, int desiredEndStates) {
         List<Automaton> filteredAutomata = new ArrayList<>();
         for (Automaton automaton : automata) {
-            if (automaton.getEndStates().size() == desiredEndStates) {
+            if (automaton.getEndStateCount() == desiredEndStates) {
                 filteredAutomata.add(automaton);
             }
         }
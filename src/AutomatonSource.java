@@ -0,0 +1,6 @@
+import java.io.Closeable;
+import java.util.Iterator;
+
+// A sequence of automata read one at a time from a dataset file, text or binary
+interface AutomatonSource extends Iterator<Automaton>, Closeable {
+}
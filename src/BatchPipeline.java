@@ -0,0 +1,412 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Non-interactive batch mode: runs every (dataset, operation) job of a job list as one pipeline
+//
+//   loader --work queue--> compute workers --result queue--> aggregator/writer
+//
+// The loader reads each dataset once and cuts it into batches of operands; one compute worker per
+// core turns a batch into a ComplexityHistogram through the shared ResultCache; the aggregator merges
+// the histograms of a job and writes its summary file as soon as the job's last batch arrives. Both
+// queues are bounded, so a fast loader waits for the workers instead of filling the heap, and loading
+// and writing overlap with computing. The loader and writer only block on I/O and queues, so they run
+// on virtual threads where the JVM has them (Java 21+) and on ordinary threads otherwise.
+//
+// Usage: java -cp target/classes:lib/automaton-1.12-4.jar Main --batch [--jobs FILE] [--ops square,plus,concatenation] [--workers N] [DATASET ...]
+// A job file has one "<dataset> <operation>[,<operation>...]" line per dataset; '#' starts a comment.
+class BatchPipeline {
+
+    private static final String USAGE =
+            "Usage: --batch [--jobs FILE] [--ops square,plus,concatenation] [--workers N] [DATASET ...]";
+
+    // Operands (unary operations) or operand pairs (concatenation) per batch
+    private static final int BATCH_SIZE = 4096;
+    // Batches waiting in each queue per compute worker
+    private static final int QUEUE_BATCHES_PER_WORKER = 4;
+
+    private final List<Job> jobs;
+    private final int workers;
+    private final ResultCache cache;
+    private final BlockingQueue<Batch> workQueue;
+    private final BlockingQueue<Result> resultQueue;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final ProgressReporter progress = new ProgressReporter("batch", 0);
+
+    BatchPipeline(List<Job> jobs, int workers, ResultCache cache) {
+        this.jobs = jobs;
+        this.workers = workers;
+        this.cache = cache;
+        this.workQueue = new ArrayBlockingQueue<>(workers * QUEUE_BATCHES_PER_WORKER);
+        this.resultQueue = new ArrayBlockingQueue<>(workers * QUEUE_BATCHES_PER_WORKER);
+    }
+
+    // Parses the command line arguments following --batch and runs the jobs
+    public static void run(String[] args, ResultCache cache) throws IOException, InterruptedException {
+        List<OperationType> operations = new ArrayList<>();
+        List<String> datasets = new ArrayList<>();
+        List<Job> jobs = new ArrayList<>();
+        int workers = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 == args.length) {
+                // Every option takes a value
+                System.out.println(USAGE);
+                return;
+            }
+            try {
+                switch (args[i]) {
+                    case "--jobs":
+                        jobs.addAll(readJobFile(args[++i]));
+                        break;
+                    case "--ops":
+                        operations.addAll(parseOperations(args[++i]));
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        datasets.add(args[i]);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Not a worker count: " + args[i]);
+                System.out.println(USAGE);
+                return;
+            } catch (IllegalArgumentException e) {
+                // Unknown operations
+                System.out.println(e.getMessage());
+                System.out.println(USAGE);
+                return;
+            }
+        }
+        if (workers < 1) {
+            System.out.println("At least one worker is needed: " + workers);
+            System.out.println(USAGE);
+            return;
+        }
+        if (operations.isEmpty()) {
+            operations.addAll(OperationType.defaults());
+        }
+        for (String dataset : datasets) {
+            for (OperationType operation : operations) {
+                jobs.add(new Job(dataset, operation));
+            }
+        }
+        if (jobs.isEmpty()) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        long start = System.nanoTime();
+        new BatchPipeline(jobs, workers, cache).run();
+        System.out.println(cache);
+        System.out.println(Instrumentation.summary(System.nanoTime() - start));
+    }
+
+    // Runs all jobs and returns when every result file is written
+    public void run() throws IOException, InterruptedException {
+        ExecutorService io = newIoExecutor();
+        List<Thread> computeThreads = new ArrayList<>();
+        try {
+            io.execute(this::load);
+            for (int i = 0; i < workers; i++) {
+                Thread thread = new Thread(this::compute, "batch-compute-" + i);
+                thread.start();
+                computeThreads.add(thread);
+            }
+            io.execute(this::aggregate);
+            for (Thread thread : computeThreads) {
+                thread.join();
+            }
+        } finally {
+            io.shutdown();
+            io.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        progress.finish();
+
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error != null) {
+            throw new IOException("Batch run failed: " + error, error);
+        }
+    }
+
+    // Loader stage: reads every dataset once and queues the batches of all of its jobs
+    private void load() {
+        try {
+            AutomatonLoader loader = new AutomatonLoader();
+            List<String> loaded = new ArrayList<>();
+            for (Job job : jobs) {
+                if (loaded.contains(job.dataset)) {
+                    continue;
+                }
+                loaded.add(job.dataset);
+                List<Automaton> automata;
+                try {
+                    automata = loader.loadAutomataFromFile(job.dataset);
+                } catch (IOException e) {
+                    throw new IOException("Cannot load " + job.dataset + ": " + e.getMessage(), e);
+                }
+                for (Job datasetJob : jobs) {
+                    if (datasetJob.dataset.equals(job.dataset) && failure.get() == null) {
+                        queueBatches(datasetJob, automata);
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            // One end marker per worker; each worker passes it on to the aggregator
+            for (int i = 0; i < workers; i++) {
+                putUninterruptibly(workQueue, Batch.END);
+            }
+        }
+    }
+
+    private void queueBatches(Job job, List<Automaton> automata) throws InterruptedException {
+        int batches = 0;
+        if (job.operation.isBinary()) {
+            // Whole rows of the pair matrix, enough of them to make a batch of about BATCH_SIZE pairs
+            int rows = Math.max(1, BATCH_SIZE / Math.max(1, automata.size()));
+            for (int row = 0; row < automata.size(); row += rows) {
+                workQueue.put(new Batch(job, automata, row, Math.min(automata.size(), row + rows)));
+                batches++;
+            }
+        } else {
+            for (int first = 0; first < automata.size(); first += BATCH_SIZE) {
+                workQueue.put(new Batch(job, automata, first, Math.min(automata.size(), first + BATCH_SIZE)));
+                batches++;
+            }
+        }
+        // The aggregator can only finish the job once it knows how many batches to wait for
+        job.expectedBatches.set(batches);
+        resultQueue.put(new Result(job, null));
+    }
+
+    // Compute stage: turns batches into histograms until the end marker arrives
+    private void compute() {
+        try {
+            while (true) {
+                Batch batch = workQueue.take();
+                if (batch == Batch.END) {
+                    break;
+                }
+                ComplexityHistogram histogram = new ComplexityHistogram();
+                if (failure.get() == null) {
+                    computeBatch(batch, histogram);
+                }
+                resultQueue.put(new Result(batch.job, histogram));
+            }
+        } catch (Throwable e) {
+            fail(e);
+        } finally {
+            putUninterruptibly(resultQueue, Result.END);
+        }
+    }
+
+    private void computeBatch(Batch batch, ComplexityHistogram histogram) {
+        List<Automaton> automata = batch.automata;
+        OperationType operation = batch.job.operation;
+        for (int i = batch.start; i < batch.end; i++) {
+            if (operation.isBinary()) {
+                for (Automaton second : automata) {
+                    LassoForm minimized = cache.minimize(operation, automata.get(i), second);
+                    histogram.add(minimized.getTotalStates(), minimized.getEndStateCount());
+                }
+                progress.advancePairs(automata.size());
+            } else {
+                LassoForm minimized = cache.minimize(operation, automata.get(i), null);
+                histogram.add(minimized.getTotalStates(), minimized.getEndStateCount());
+                progress.advance(1);
+            }
+        }
+    }
+
+    // Aggregator stage: merges the histograms of each job and writes a job's file once it is complete
+    private void aggregate() {
+        int finishedWorkers = 0;
+        try {
+            while (finishedWorkers < workers) {
+                Result result = resultQueue.take();
+                if (result == Result.END) {
+                    finishedWorkers++;
+                    continue;
+                }
+                Job job = result.job;
+                if (result.histogram != null) {
+                    job.histogram.merge(result.histogram);
+                    job.receivedBatches++;
+                }
+                if (job.receivedBatches == job.expectedBatches.get() && !job.written && failure.get() == null) {
+                    write(job);
+                    job.written = true;
+                }
+            }
+        } catch (Throwable e) {
+            fail(e);
+            // Keep draining so that the workers never block on a full queue
+            while (finishedWorkers < workers) {
+                if (takeUninterruptibly(resultQueue) == Result.END) {
+                    finishedWorkers++;
+                }
+            }
+        }
+    }
+
+    private void write(Job job) throws IOException {
+        long start = Instrumentation.start();
+        String outputFile = job.outputFile();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write("Summary of Results for " + job.operation.getName() + " on unary DFAs:\n");
+            job.histogram.writeSummary(writer);
+        }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        System.out.println(job.operation.getName() + " of " + job.dataset + ": " + job.histogram.getTotal()
+                + " results saved to " + outputFile);
+    }
+
+    private void fail(Throwable e) {
+        failure.compareAndSet(null, e);
+    }
+
+    // Returns an executor that starts a virtual thread per task if the JVM supports them (Java 21+),
+    // or a cached pool of platform threads otherwise
+    static ExecutorService newIoExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "batch-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Reads a job file: "<dataset> <operation>[,<operation>...]" per line, operations defaulting to square,
+    // plus and concatenation
+    static List<Job> readJobFile(String filename) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(filename))) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] parts = line.trim().split("\\s+");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            List<OperationType> operations = parts.length > 1 ? parseOperations(parts[1])
+                    : OperationType.defaults();
+            for (OperationType operation : operations) {
+                jobs.add(new Job(parts[0], operation));
+            }
+        }
+        return jobs;
+    }
+
+    static List<OperationType> parseOperations(String list) {
+        List<OperationType> operations = new ArrayList<>();
+        for (String name : list.split(",")) {
+            operations.add(OperationType.fromName(name.trim()));
+        }
+        return operations;
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T element) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(element);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static <T> T takeUninterruptibly(BlockingQueue<T> queue) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return queue.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // One operation applied to one dataset, with the state the aggregator keeps for it
+    static final class Job {
+        final String dataset;
+        final OperationType operation;
+        // Set by the loader once all batches are queued, -1 until then
+        final AtomicInteger expectedBatches = new AtomicInteger(-1);
+        // Only touched by the aggregator
+        final ComplexityHistogram histogram = new ComplexityHistogram();
+        int receivedBatches;
+        boolean written;
+
+        Job(String dataset, OperationType operation) {
+            this.dataset = dataset;
+            this.operation = operation;
+        }
+
+        // Result file next to the dataset, named like the interactive mode names it
+        String outputFile() {
+            return Main.resultPath(dataset,
+                    operation == OperationType.CONCATENATION ? "_concatenate" : "_" + operation.getName());
+        }
+    }
+
+    // Operands start..end-1 of a dataset; for concatenation rows start..end-1 of the pair matrix
+    private static final class Batch {
+        static final Batch END = new Batch(null, null, 0, 0);
+
+        final Job job;
+        final List<Automaton> automata;
+        final int start;
+        final int end;
+
+        Batch(Job job, List<Automaton> automata, int start, int end) {
+            this.job = job;
+            this.automata = automata;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // The histogram of one batch, or (with a null histogram) the notice that all batches of a job are queued
+    private static final class Result {
+        static final Result END = new Result(null, null);
+
+        final Job job;
+        final ComplexityHistogram histogram;
+
+        Result(Job job, ComplexityHistogram histogram) {
+            this.job = job;
+            this.histogram = histogram;
+        }
+    }
+}
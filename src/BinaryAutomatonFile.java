@@ -0,0 +1,283 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Packed binary dataset of unary DFAs that all have the same number of states.
+//
+// Layout (big-endian header, 24 bytes):
+//   magic "UDFA" | version (short) | bits per successor (short) | state count (int) | reserved (int) | record count (long)
+// followed by fixed-size records. Each record is a little-endian bit string holding the successor of
+// every state in bitsPerState bits, then one accepting bit per state; a 14-state DFA takes 9 bytes
+// instead of the 29 of its text line, and with up to 16 states the successors are 4-bit nibbles.
+// Records are decoded straight from a memory-mapped view of the file, and because they all have the
+// same size any record can be read by its number.
+class BinaryAutomatonFile implements Closeable {
+
+    static final int MAGIC = 0x55444641; // "UDFA"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    // Upper bound on the records per mapped window, so that files larger than 2 GB can be mapped as well
+    private static final long MAX_RECORDS_PER_WINDOW = 1L << 24;
+
+    private final FileChannel channel;
+    private final int totalStates;
+    private final int bitsPerState;
+    private final int recordBytes;
+    private final long recordCount;
+    private final long recordsPerWindow;
+    private MappedByteBuffer window;
+    private long windowFirstRecord = -1;
+
+    public BinaryAutomatonFile(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        ByteBuffer header = readPrefix(channel, HEADER_BYTES);
+        if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("Not a binary automaton file: " + filename);
+        }
+        short version = header.getShort();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("Unsupported binary automaton file version " + version + ": " + filename);
+        }
+        this.bitsPerState = header.getShort();
+        this.totalStates = header.getInt();
+        header.getInt();
+        this.recordCount = header.getLong();
+        this.recordBytes = recordBytes(totalStates, bitsPerState);
+        this.recordsPerWindow = Math.min(MAX_RECORDS_PER_WINDOW, Integer.MAX_VALUE / recordBytes);
+    }
+
+    // Checks whether a file starts with the binary format's magic number
+    public static boolean isBinaryFile(String filename) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer magic = readPrefix(file, 4);
+            return magic.remaining() == 4 && magic.getInt() == MAGIC;
+        }
+    }
+
+    public int getTotalStates() {
+        return totalStates;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Decodes the automaton stored as record number index; not safe for concurrent use of one instance.
+    // Automata the text format can encode derive their definition string as id on first request, larger
+    // ones are named "#index" after their record
+    public Automaton get(long index) throws IOException {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+        }
+        long first = index / recordsPerWindow * recordsPerWindow;
+        if (first != windowFirstRecord) {
+            long records = Math.min(recordsPerWindow, recordCount - first);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + first * recordBytes, records * recordBytes);
+            windowFirstRecord = first;
+        }
+        int offset = (int) ((index - first) * recordBytes);
+
+        int[] successors = new int[totalStates];
+        BitSet endStates = new BitSet(totalStates);
+        for (int state = 0; state < totalStates; state++) {
+            successors[state] = (int) readBits(window, offset, state * bitsPerState, bitsPerState);
+            if (successors[state] >= totalStates) {
+                // Only a corrupt file has successors beyond the state count its bit width allows
+                throw new IOException("Record " + index + " has successor " + successors[state] + " for state " + state
+                        + " of a " + totalStates + "-state DFA");
+            }
+            if (readBits(window, offset, totalStates * bitsPerState + state, 1) != 0) {
+                endStates.set(state);
+            }
+        }
+        return new Automaton(successors, endStates, totalStates > AutomatonLoader.MAX_TEXT_STATE + 1 ? "#" + index : null);
+    }
+
+    // Reads the records one after another
+    public AutomatonSource records() {
+        return new AutomatonSource() {
+            private long next;
+
+            @Override
+            public boolean hasNext() {
+                return next < recordCount;
+            }
+
+            @Override
+            public Automaton next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return get(next++);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error reading record " + (next - 1), e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                BinaryAutomatonFile.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Writes automata with the given number of states to a binary file and returns how many were written
+    public static long write(Iterator<Automaton> automata, int totalStates, String filename) throws IOException {
+        int bitsPerState = bitsPerState(totalStates);
+        int recordBytes = recordBytes(totalStates, bitsPerState);
+        Path path = Paths.get(filename);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(HEADER_BYTES, recordBytes) * 4096);
+            buffer.position(HEADER_BYTES);
+            long count = 0;
+            byte[] record = new byte[recordBytes];
+            while (automata.hasNext()) {
+                Automaton automaton = automata.next();
+                if (automaton.getTotalStates() != totalStates || !automaton.isDeterministic()) {
+                    throw new IllegalArgumentException("Record " + count + " is not a DFA with " + totalStates
+                            + " states: " + automaton.getCurrentAutomata());
+                }
+                encode(automaton, bitsPerState, record);
+                if (buffer.remaining() < recordBytes) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        file.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                buffer.put(record);
+                count++;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+
+            // The record count is only known now, so the header is written last
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) bitsPerState).putInt(totalStates).putInt(0)
+                    .putLong(count);
+            header.flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += file.write(header, position);
+            }
+            return count;
+        }
+    }
+
+    // Converts a text dataset (one definition per line) to the binary format
+    public static long convertTextToBinary(String textFile, String binaryFile) throws IOException {
+        try (MappedAutomatonReader reader = new MappedAutomatonReader(textFile)) {
+            if (!reader.hasNext()) {
+                throw new IOException("No automata found in: " + textFile);
+            }
+            // The first automaton fixes the state count of the file
+            Automaton first = reader.next();
+            Iterator<Automaton> all = new Iterator<Automaton>() {
+                private Automaton pending = first;
+
+                @Override
+                public boolean hasNext() {
+                    return pending != null || reader.hasNext();
+                }
+
+                @Override
+                public Automaton next() {
+                    if (pending != null) {
+                        Automaton current = pending;
+                        pending = null;
+                        return current;
+                    }
+                    return reader.next();
+                }
+            };
+            return write(all, first.getTotalStates(), binaryFile);
+        }
+    }
+
+    // Converts a binary dataset back to the text format
+    public static long convertBinaryToText(String binaryFile, String textFile) throws IOException {
+        try (BinaryAutomatonFile file = new BinaryAutomatonFile(binaryFile);
+                BufferedWriter writer = new BufferedWriter(new FileWriter(textFile))) {
+            for (long index = 0; index < file.getRecordCount(); index++) {
+                if (index > 0) {
+                    writer.newLine();
+                }
+                writer.write(AutomatonLoader.toDefinition(file.get(index)));
+            }
+            return file.getRecordCount();
+        }
+    }
+
+    // Reads up to the given number of bytes from the start of a file, fewer if the file is shorter
+    private static ByteBuffer readPrefix(FileChannel file, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining() && file.read(buffer, buffer.position()) > 0) {
+            continue;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Number of bits needed for a state number
+    static int bitsPerState(int totalStates) {
+        return Math.max(1, 32 - Integer.numberOfLeadingZeros(totalStates - 1));
+    }
+
+    static int recordBytes(int totalStates, int bitsPerState) {
+        return (totalStates * bitsPerState + totalStates + 7) / 8;
+    }
+
+    private static void encode(Automaton automaton, int bitsPerState, byte[] record) {
+        Arrays.fill(record, (byte) 0);
+        int totalStates = automaton.getTotalStates();
+        for (int state = 0; state < totalStates; state++) {
+            writeBits(record, state * bitsPerState, bitsPerState, automaton.getSuccessor(state));
+            if (automaton.isEndState(state)) {
+                writeBits(record, totalStates * bitsPerState + state, 1, 1);
+            }
+        }
+    }
+
+    private static void writeBits(byte[] record, int bitOffset, int width, long value) {
+        for (int i = 0; i < width; i++) {
+            if ((value >>> i & 1) != 0) {
+                int bit = bitOffset + i;
+                record[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+    }
+
+    private static long readBits(ByteBuffer buffer, int recordOffset, int bitOffset, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            int bit = bitOffset + i;
+            if ((buffer.get(recordOffset + (bit >>> 3)) >>> (bit & 7) & 1) != 0) {
+                value |= 1L << i;
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,78 @@
+import dk.brics.automaton.State;
+import dk.brics.automaton.StatePair;
+import dk.brics.automaton.Transition;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Converts between our unary automata and dk.brics.automaton automata over the single letter 'a'.
+// Epsilon transitions are handed to brics as state pairs, which brics folds into letter transitions.
+// brics automata may be partial and brics minimization drops dead states, so converting back adds a
+// rejecting sink for missing transitions: the result is a complete DFA like the ones our engine builds.
+// Only for a minimal automaton whose path ends in a rejecting state without transitions (brics keeps
+// the initial state of an empty language) that state already is the sink and loops on itself.
+class BricsAdapter {
+
+    // The letter of the unary alphabet on the brics side
+    static final char LETTER = 'a';
+
+    private BricsAdapter() {
+    }
+
+    // Builds a brics automaton with the same states, transitions and end states; state 0 is initial
+    static dk.brics.automaton.Automaton toBrics(Automaton automaton) {
+        int totalStates = Math.max(automaton.getTotalStates(), 1);
+        State[] states = new State[totalStates];
+        for (int state = 0; state < totalStates; state++) {
+            states[state] = new State();
+            states[state].setAccept(automaton.isEndState(state));
+        }
+        List<StatePair> epsilons = new ArrayList<>();
+        for (int state = 0; state < totalStates; state++) {
+            for (int k = 0; k < automaton.getSuccessorCount(state); k++) {
+                states[state].addTransition(new Transition(LETTER, states[automaton.getSuccessor(state, k)]));
+            }
+            for (int target : automaton.getEpsilonTargets(state)) {
+                epsilons.add(new StatePair(states[state], states[target]));
+            }
+        }
+        dk.brics.automaton.Automaton result = new dk.brics.automaton.Automaton();
+        result.setInitialState(states[0]);
+        result.setDeterministic(automaton.isDeterministic());
+        if (!epsilons.isEmpty()) {
+            result.addEpsilons(epsilons);
+        }
+        return result;
+    }
+
+    // Converts a deterministic brics automaton back, numbering the states along the path from the initial
+    // state; states that cannot be reached are dropped and a missing transition leads to a rejecting sink
+    static Automaton fromBrics(dk.brics.automaton.Automaton automaton, String currentAutomata, boolean minimal) {
+        Map<State, Integer> numbers = new HashMap<>();
+        List<State> path = new ArrayList<>();
+        State state = automaton.getInitialState();
+        while (state != null && !numbers.containsKey(state)) {
+            numbers.put(state, path.size());
+            path.add(state);
+            state = state.step(LETTER);
+        }
+        boolean deadEnd = state == null && minimal && !path.get(path.size() - 1).isAccept();
+        int totalStates = path.size() + (state == null && !deadEnd ? 1 : 0);
+        int[] successors = new int[totalStates];
+        BitSet endStates = new BitSet(totalStates);
+        for (int i = 0; i < path.size(); i++) {
+            State successor = path.get(i).step(LETTER);
+            successors[i] = successor != null ? numbers.get(successor) : deadEnd ? i : path.size();
+            if (path.get(i).isAccept()) {
+                endStates.set(i);
+            }
+        }
+        if (state == null && !deadEnd) {
+            // The sink loops on itself
+            successors[path.size()] = path.size();
+        }
+        return new Automaton(successors, endStates, currentAutomata);
+    }
+}
@@ -0,0 +1,23 @@
+// Runs determinization and minimization on dk.brics.automaton: the automaton is converted with
+// BricsAdapter, processed by brics and converted back
+class BricsBackend implements AutomatonBackend {
+
+    @Override
+    public String getName() {
+        return "brics";
+    }
+
+    @Override
+    public Automaton convertToDFA(Automaton nfa) {
+        dk.brics.automaton.Automaton automaton = BricsAdapter.toBrics(nfa);
+        automaton.determinize();
+        return BricsAdapter.fromBrics(automaton, nfa.getCurrentAutomata() + "_DFA", false);
+    }
+
+    @Override
+    public Automaton minimizeDFA(Automaton dfa) {
+        dk.brics.automaton.Automaton automaton = BricsAdapter.toBrics(dfa);
+        automaton.minimize();
+        return BricsAdapter.fromBrics(automaton, dfa.getCurrentAutomata() + "_minimized", true);
+    }
+}
@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+// Reservoir sample of at most samplesPerBucket examples per (states, endStates) bucket, keyed by
+// ComplexityHistogram.packKey. ComplexityHistogram keeps example descriptions with it and
+// ResultRecorder keeps records, so that the same seed picks the same examples in both;
+// KEEP_ALL_SAMPLES keeps every example in the order it was offered.
+class BucketSampler<T> {
+
+    private final int samplesPerBucket;
+    private final Map<Long, List<T>> samples = new HashMap<>();
+    private final Random random;
+
+    public BucketSampler(int samplesPerBucket, long seed) {
+        this.samplesPerBucket = samplesPerBucket;
+        this.random = new Random(seed);
+    }
+
+    // Offers the count-th result of a bucket; the example is only built if it is picked
+    public void offer(long key, long count, Supplier<T> example) {
+        if (samplesPerBucket == 0) {
+            return;
+        }
+        List<T> bucketSamples = samples.computeIfAbsent(key, k -> new ArrayList<>());
+        if (bucketSamples.size() < samplesPerBucket) {
+            bucketSamples.add(example.get());
+            return;
+        }
+        // Reservoir sampling: the n-th result of a bucket replaces a random example with probability k/n
+        long slot = (long) (random.nextDouble() * count);
+        if (slot < samplesPerBucket) {
+            bucketSamples.set((int) slot, example.get());
+        }
+    }
+
+    // Appends an example to a bucket without sampling, e.g. one read back from a file
+    public void append(long key, T example) {
+        samples.computeIfAbsent(key, k -> new ArrayList<>()).add(example);
+    }
+
+    // Combines the samples of another sampler into this one; ourCounts and theirCounts map a key to the
+    // number of results each side's sample of that bucket was drawn from
+    public void merge(BucketSampler<T> other, LongUnaryOperator ourCounts, LongUnaryOperator theirCounts) {
+        if (samplesPerBucket == 0) {
+            return;
+        }
+        for (Map.Entry<Long, List<T>> entry : other.samples.entrySet()) {
+            long key = entry.getKey();
+            List<T> ours = samples.getOrDefault(key, new ArrayList<>());
+            samples.put(key, mergeSamples(ours, ourCounts.applyAsLong(key), entry.getValue(),
+                    theirCounts.applyAsLong(key)));
+        }
+    }
+
+    // Returns the examples kept for a bucket
+    public List<T> get(long key) {
+        return Collections.unmodifiableList(samples.getOrDefault(key, new ArrayList<>()));
+    }
+
+    // Checks whether examples are kept at all
+    public boolean keepsSamples() {
+        return samplesPerBucket > 0;
+    }
+
+    // Combines samples of two disjoint groups of results with the given sizes: every slot is drawn from
+    // one side with probability proportional to the results of that side not drawn yet
+    private List<T> mergeSamples(List<T> ours, long ourCount, List<T> theirs, long theirCount) {
+        if (samplesPerBucket == ComplexityHistogram.KEEP_ALL_SAMPLES) {
+            ours.addAll(theirs);
+            return ours;
+        }
+        List<T> ourPool = new ArrayList<>(ours);
+        List<T> theirPool = new ArrayList<>(theirs);
+        List<T> merged = new ArrayList<>();
+        long ourRemaining = ourCount;
+        long theirRemaining = theirCount;
+        while (merged.size() < samplesPerBucket && (!ourPool.isEmpty() || !theirPool.isEmpty())) {
+            boolean takeOurs = theirPool.isEmpty()
+                    || (!ourPool.isEmpty() && random.nextDouble() * (ourRemaining + theirRemaining) < ourRemaining);
+            List<T> pool = takeOurs ? ourPool : theirPool;
+            merged.add(pool.remove(random.nextInt(pool.size())));
+            if (takeOurs) {
+                ourRemaining--;
+            } else {
+                theirRemaining--;
+            }
+        }
+        return merged;
+    }
+}
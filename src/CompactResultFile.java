@@ -0,0 +1,344 @@
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Binary result file holding what the text result files hold, without formatting every result.
+//
+// Layout (big-endian):
+//   magic "URES" | version (short) | flags (short) | header length (int)
+//   header: operation name (UTF) | input dataset (UTF) | bucket count (int), then per bucket in the
+//           order of the text summary: states (int) | endStates (int) | count (long) | records (int) |
+//           stored block bytes (int)
+//   one block per bucket with records, in the same order
+// A block is columnar: the first input ids of all its records (int each), then the second input ids
+// for binary operations, then the tail lengths (1, 2 or 4 bytes each, depending on the bucket's state
+// count), then the accepting flags of every record as a little-endian bit string of one byte per 8
+// states. Within a bucket every result has the same state count, so these canonical forms have a fixed
+// size. With the DEFLATED flag every block is compressed on its own, so one bucket can be read without
+// the others; the input ids refer to the automata of the dataset named in the header, which is only
+// needed to print them.
+class CompactResultFile implements Closeable {
+
+    static final int MAGIC = 0x55524553; // "URES"
+    static final short VERSION = 1;
+    static final int PREFIX_BYTES = 12;
+
+    // Flags
+    static final short DEFLATED = 1;
+    static final short DETAILS = 2;
+
+    private final FileChannel channel;
+    private final boolean deflated;
+    private final boolean details;
+    private final OperationType operation;
+    private final String dataset;
+    private final ComplexityHistogram histogram = new ComplexityHistogram();
+    private final long[] keys;
+    private final int[] recordCounts;
+    private final int[] storedBytes;
+    private final long[] offsets;
+
+    public CompactResultFile(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        try {
+            ByteBuffer prefix = read(channel, 0, PREFIX_BYTES);
+            if (prefix.getInt() != MAGIC) {
+                throw new IOException("Not a compact result file: " + filename);
+            }
+            short version = prefix.getShort();
+            if (version != VERSION) {
+                throw new IOException("Unsupported compact result file version " + version + ": " + filename);
+            }
+            short flags = prefix.getShort();
+            this.deflated = (flags & DEFLATED) != 0;
+            this.details = (flags & DETAILS) != 0;
+            int headerBytes = prefix.getInt();
+
+            DataInputStream header = new DataInputStream(
+                    new ByteArrayInputStream(read(channel, PREFIX_BYTES, headerBytes).array()));
+            this.operation = OperationType.fromName(header.readUTF());
+            this.dataset = header.readUTF();
+            int buckets = header.readInt();
+            this.keys = new long[buckets];
+            this.recordCounts = new int[buckets];
+            this.storedBytes = new int[buckets];
+            this.offsets = new long[buckets];
+            long offset = PREFIX_BYTES + headerBytes;
+            for (int i = 0; i < buckets; i++) {
+                int states = header.readInt();
+                int endStates = header.readInt();
+                histogram.add(states, endStates, header.readLong());
+                keys[i] = ComplexityHistogram.packKey(states, endStates);
+                recordCounts[i] = header.readInt();
+                storedBytes[i] = header.readInt();
+                offsets[i] = offset;
+                offset += storedBytes[i];
+            }
+        } catch (IllegalArgumentException e) {
+            channel.close();
+            throw new IOException(e.getMessage() + ": " + filename, e);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Checks whether a file starts with the compact result format's magic number
+    public static boolean isCompactFile(String filename) throws IOException {
+        try (FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            return file.size() >= 4 && read(file, 0, 4).getInt() == MAGIC;
+        }
+    }
+
+    public OperationType getOperation() {
+        return operation;
+    }
+
+    // Returns the dataset the input ids refer to, as given when writing
+    public String getDataset() {
+        return dataset;
+    }
+
+    // Returns the counts of all results
+    public ComplexityHistogram getHistogram() {
+        return histogram;
+    }
+
+    // Checks whether records were kept, i.e. whether the text file has a details section
+    public boolean hasDetails() {
+        return details;
+    }
+
+    // Decodes the records of one bucket, reading only that bucket's block
+    public ResultRecorder.Record[] getRecords(int states, int endStates) throws IOException {
+        long key = ComplexityHistogram.packKey(states, endStates);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return decode(i);
+            }
+        }
+        return new ResultRecorder.Record[0];
+    }
+
+    // Reads all counts and records into a recorder, e.g. to write the text layout
+    public ResultRecorder toRecorder() throws IOException {
+        ResultRecorder recorder = new ResultRecorder(details ? ComplexityHistogram.KEEP_ALL_SAMPLES : 0, 0);
+        recorder.getHistogram().merge(histogram);
+        for (int i = 0; i < keys.length; i++) {
+            for (ResultRecorder.Record record : decode(i)) {
+                recorder.addSample(record);
+            }
+        }
+        return recorder;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Writes the counts and records of a recorder; dataset names the input list the record ids refer to
+    public static void write(ResultRecorder recorder, OperationType operation, String dataset, boolean deflate,
+            String filename) throws IOException {
+        ComplexityHistogram histogram = recorder.getHistogram();
+        long[] bucketKeys = histogram.packedKeys();
+        byte[][] blocks = new byte[bucketKeys.length][];
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeUTF(operation.getName());
+        header.writeUTF(dataset);
+        header.writeInt(bucketKeys.length);
+        for (int i = 0; i < bucketKeys.length; i++) {
+            int states = (int) (bucketKeys[i] >>> 32);
+            int endStates = (int) bucketKeys[i];
+            List<ResultRecorder.Record> records = recorder.getRecords(states, endStates);
+            byte[] block = encode(records, states, operation.isBinary());
+            blocks[i] = deflate ? deflate(block) : block;
+            header.writeInt(states);
+            header.writeInt(endStates);
+            header.writeLong(histogram.getCount(states, endStates));
+            header.writeInt(records.size());
+            header.writeInt(blocks[i].length);
+        }
+        header.flush();
+
+        short flags = (short) ((deflate ? DEFLATED : 0) | (recorder.keepsSamples() ? DETAILS : 0));
+        ByteBuffer prefix = ByteBuffer.allocate(PREFIX_BYTES);
+        prefix.putInt(MAGIC).putShort(VERSION).putShort(flags).putInt(headerBytes.size());
+        prefix.flip();
+        try (FileChannel file = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(file, prefix);
+            writeFully(file, ByteBuffer.wrap(headerBytes.toByteArray()));
+            for (byte[] block : blocks) {
+                writeFully(file, ByteBuffer.wrap(block));
+            }
+        }
+    }
+
+    // Converts a compact result file to the text layout; dataset overrides the input dataset recorded in
+    // the file when it is not null. Results are named after their inputs only if the dataset can be read.
+    public static void convertToText(String compactFile, String textFile, String dataset) throws IOException {
+        try (CompactResultFile file = new CompactResultFile(compactFile)) {
+            String inputPath = dataset != null ? dataset : file.getDataset();
+            List<Automaton> inputs = null;
+            if (file.hasDetails() && Paths.get(inputPath).toFile().isFile()) {
+                inputs = new AutomatonLoader().loadAutomataFromDefinitionsFile(inputPath);
+            } else if (file.hasDetails()) {
+                System.out.println("Input dataset " + inputPath + " not found, inputs are printed by their ids");
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(textFile))) {
+                file.toRecorder().writeText(writer, file.getOperation(), inputs);
+            }
+        }
+    }
+
+    private ResultRecorder.Record[] decode(int bucket) throws IOException {
+        int count = recordCounts[bucket];
+        ResultRecorder.Record[] records = new ResultRecorder.Record[count];
+        if (count == 0) {
+            return records;
+        }
+        int states = (int) (keys[bucket] >>> 32);
+        ByteBuffer block = read(channel, offsets[bucket], storedBytes[bucket]);
+        if (deflated) {
+            block = ByteBuffer.wrap(inflate(block.array(), count * recordBytes(states, operation.isBinary())));
+        }
+        int[] first = new int[count];
+        int[] second = new int[count];
+        int[] tails = new int[count];
+        for (int i = 0; i < count; i++) {
+            first[i] = block.getInt();
+        }
+        for (int i = 0; i < count; i++) {
+            second[i] = operation.isBinary() ? block.getInt() : -1;
+        }
+        int tailBytes = tailBytes(states);
+        for (int i = 0; i < count; i++) {
+            tails[i] = tailBytes == 1 ? block.get() & 0xFF : tailBytes == 2 ? block.getShort() & 0xFFFF : block.getInt();
+        }
+        byte[] accepting = new byte[(states + 7) / 8];
+        for (int i = 0; i < count; i++) {
+            block.get(accepting);
+            records[i] = new ResultRecorder.Record(first[i], second[i],
+                    new LassoForm(tails[i], states - tails[i], BitSet.valueOf(accepting)));
+        }
+        return records;
+    }
+
+    private static byte[] encode(List<ResultRecorder.Record> records, int states, boolean binary) {
+        ByteBuffer block = ByteBuffer.allocate(records.size() * recordBytes(states, binary));
+        for (ResultRecorder.Record record : records) {
+            block.putInt(record.getFirst());
+        }
+        if (binary) {
+            for (ResultRecorder.Record record : records) {
+                block.putInt(record.getSecond());
+            }
+        }
+        int tailBytes = tailBytes(states);
+        for (ResultRecorder.Record record : records) {
+            int tail = record.getResult().getTailLength();
+            if (tailBytes == 1) {
+                block.put((byte) tail);
+            } else if (tailBytes == 2) {
+                block.putShort((short) tail);
+            } else {
+                block.putInt(tail);
+            }
+        }
+        int acceptingBytes = (states + 7) / 8;
+        for (ResultRecorder.Record record : records) {
+            byte[] accepting = new byte[acceptingBytes];
+            LassoForm result = record.getResult();
+            for (int state = 0; state < states; state++) {
+                if (result.isAccepting(state)) {
+                    accepting[state >>> 3] |= (byte) (1 << (state & 7));
+                }
+            }
+            block.put(accepting);
+        }
+        return block.array();
+    }
+
+    // Bytes of one record before compression
+    private static int recordBytes(int states, boolean binary) {
+        return (binary ? 8 : 4) + tailBytes(states) + (states + 7) / 8;
+    }
+
+    private static int tailBytes(int states) {
+        return states <= 0xFF ? 1 : states <= 0xFFFF ? 2 : 4;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[length];
+            int filled = 0;
+            while (filled < length && !inflater.finished()) {
+                int inflated = inflater.inflate(result, filled, length - filled);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                filled += inflated;
+            }
+            if (filled != length) {
+                throw new IOException("Truncated result block: " + filled + " of " + length + " bytes");
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt result block: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Reads exactly the given number of bytes at a position of the file
+    private static ByteBuffer read(FileChannel file, long position, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+}
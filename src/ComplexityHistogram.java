@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Counts results by their (states, endStates) key without keeping the automata themselves.
+// Counts live in a table indexed by state count and end state count that grows on demand;
+// histograms filled by different threads are combined with merge.
+// Optionally every bucket also keeps a reservoir sample (see BucketSampler) of at most samplesPerBucket
+// example descriptions, so memory stays bounded by the number of buckets however many results are
+// added; KEEP_ALL_SAMPLES keeps every example in the order it was added.
+class ComplexityHistogram {
+
+    // Sample size that keeps every example
+    public static final int KEEP_ALL_SAMPLES = Integer.MAX_VALUE;
+
+    private long[][] counts = new long[0][];
+    private long total;
+    // Example descriptions per bucket
+    private final BucketSampler<String> samples;
+
+    // Creates a histogram that only counts
+    public ComplexityHistogram() {
+        this(0, 0);
+    }
+
+    // Creates a histogram that keeps up to samplesPerBucket examples per bucket, drawn with the given seed
+    public ComplexityHistogram(int samplesPerBucket, long seed) {
+        this.samples = new BucketSampler<>(samplesPerBucket, seed);
+    }
+
+    // Records one result
+    public void add(int states, int endStates) {
+        add(states, endStates, 1);
+    }
+
+    // Records one result with a description of it; the description is only built if the result is
+    // picked for the bucket's sample
+    public void add(int states, int endStates, Supplier<String> example) {
+        add(states, endStates, 1);
+        samples.offer(packKey(states, endStates), getCount(states, endStates), example);
+    }
+
+    // Records several results with the same key
+    public void add(int states, int endStates, long count) {
+        if (states >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(states + 1, counts.length * 2));
+        }
+        long[] row = counts[states];
+        if (row == null || endStates >= row.length) {
+            row = row == null ? new long[endStates + 1] : Arrays.copyOf(row, Math.max(endStates + 1, row.length * 2));
+            counts[states] = row;
+        }
+        row[endStates] += count;
+        total += count;
+    }
+
+    // Adds all counts of another histogram to this one. The samples of each bucket are combined into a
+    // sample of both histograms' results; when every example is kept, the other's examples are appended
+    public void merge(ComplexityHistogram other) {
+        samples.merge(other.samples, this::getPackedCount, other::getPackedCount);
+        for (int states = 0; states < other.counts.length; states++) {
+            long[] row = other.counts[states];
+            if (row == null) {
+                continue;
+            }
+            for (int endStates = 0; endStates < row.length; endStates++) {
+                if (row[endStates] != 0) {
+                    add(states, endStates, row[endStates]);
+                }
+            }
+        }
+    }
+
+    // Records several results with a key packed by packKey
+    public void addPacked(long packedKey, long count) {
+        add((int) (packedKey >>> 32), (int) packedKey, count);
+    }
+
+    public long getCount(int states, int endStates) {
+        if (states >= counts.length || counts[states] == null || endStates >= counts[states].length) {
+            return 0;
+        }
+        return counts[states][endStates];
+    }
+
+    // Returns the count of a key packed by packKey
+    public long getPackedCount(long packedKey) {
+        return getCount((int) (packedKey >>> 32), (int) packedKey);
+    }
+
+    // Returns the examples kept for a bucket
+    public List<String> getSamples(int states, int endStates) {
+        return samples.get(packKey(states, endStates));
+    }
+
+    // Checks whether examples are kept at all
+    public boolean keepsSamples() {
+        return samples.keepsSamples();
+    }
+
+    // Returns the number of results recorded so far
+    public long getTotal() {
+        return total;
+    }
+
+    // Writes one "(states,endStates): count" line per bucket, in descending order
+    public void writeSummary(Writer writer) throws IOException {
+        for (int states = counts.length - 1; states >= 0; states--) {
+            long[] row = counts[states];
+            if (row == null) {
+                continue;
+            }
+            for (int endStates = row.length - 1; endStates >= 0; endStates--) {
+                if (row[endStates] != 0) {
+                    writer.write(key(states, endStates) + ": " + row[endStates] + "\n");
+                }
+            }
+        }
+    }
+
+    // Returns the packKey keys of the non-empty buckets, in the order writeSummary writes them
+    public long[] packedKeys() {
+        long[] keys = new long[16];
+        int size = 0;
+        for (int states = counts.length - 1; states >= 0; states--) {
+            long[] row = counts[states];
+            if (row == null) {
+                continue;
+            }
+            for (int endStates = row.length - 1; endStates >= 0; endStates--) {
+                if (row[endStates] != 0) {
+                    if (size == keys.length) {
+                        keys = Arrays.copyOf(keys, size * 2);
+                    }
+                    keys[size++] = packKey(states, endStates);
+                }
+            }
+        }
+        return Arrays.copyOf(keys, size);
+    }
+
+    // Adds the count of a "(states,endStates): count" line as written by writeSummary; returns false
+    // if the line has a different form
+    public boolean addSummaryLine(String line) {
+        int comma = line.indexOf(',');
+        int close = line.indexOf("): ");
+        if (!line.startsWith("(") || comma < 0 || close < comma) {
+            return false;
+        }
+        try {
+            add(Integer.parseInt(line.substring(1, comma).trim()), Integer.parseInt(line.substring(comma + 1, close).trim()),
+                    Long.parseLong(line.substring(close + 3).trim()));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // Writes the examples of every bucket in descending order: a "<headerPrefix>(states,endStates):" line,
+    // one line per example and an empty line
+    public void writeSamples(Writer writer, String headerPrefix) throws IOException {
+        for (int states = counts.length - 1; states >= 0; states--) {
+            long[] row = counts[states];
+            if (row == null) {
+                continue;
+            }
+            for (int endStates = row.length - 1; endStates >= 0; endStates--) {
+                if (row[endStates] == 0) {
+                    continue;
+                }
+                writer.write(headerPrefix + key(states, endStates) + ":\n");
+                for (String example : getSamples(states, endStates)) {
+                    writer.write(example + "\n");
+                }
+                writer.write("\n");
+            }
+        }
+    }
+
+    // Formats a key the way result files do, e.g. "(5,2)"
+    public static String key(int states, int endStates) {
+        return "(" + states + "," + endStates + ")";
+    }
+
+    // Packs a key into one long, as taken by addPacked
+    public static long packKey(int states, int endStates) {
+        return (long) states << 32 | endStates;
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// Runs square, plus and concatenation through two backends over whole datasets and compares every
+// result: the languages of the determinized and of the minimized DFA, and the minimized DFA's
+// (states, endStates). The determinized DFAs' sizes are only shown: they may legitimately differ, as
+// brics removes epsilon transitions by copying transitions and so starts the subset construction from
+// the start state alone instead of its epsilon closure. Each backend processes a dataset on its own in a
+// pool of worker threads, so the reported rates are the throughput of that backend alone. Square and
+// plus take every automaton of the dataset; concatenation pairs every automaton with a partner drawn
+// with a fixed seed, as the full pair matrix of the larger datasets is out of reach for a slower backend.
+//
+// Usage: java -cp target/classes:lib/automaton-1.12-4.jar Main --differential [--ops square,plus,concatenation]
+//            [--workers W] [--seed S] [--backends native,brics] [DATASET ...]
+// Without datasets every UnaryAutomataList/unarydfaN.txt is run, smallest first.
+class DifferentialHarness {
+
+    private static final String USAGE = "Usage: --differential [--ops square,plus,concatenation] [--workers W] [--seed S]"
+            + " [--backends native,brics] [DATASET ...]";
+
+    private static final String DEFAULT_DIRECTORY = "UnaryAutomataList";
+    // Mismatches printed in full per dataset and operation
+    private static final int REPORTED_MISMATCHES = 10;
+
+    private final AutomatonBackend reference;
+    private final AutomatonBackend candidate;
+    private final int workers;
+    private final long seed;
+    private long totalMismatches;
+
+    DifferentialHarness(AutomatonBackend reference, AutomatonBackend candidate, int workers, long seed) {
+        this.reference = reference;
+        this.candidate = candidate;
+        this.workers = workers;
+        this.seed = seed;
+    }
+
+    // Parses the arguments following --differential and runs the comparison; returns the number of mismatches,
+    // or -1 if the arguments are invalid
+    public static long run(String[] args) throws IOException {
+        List<OperationType> operations = new ArrayList<>();
+        List<String> datasets = new ArrayList<>();
+        int workers = ParallelPairs.defaultParallelism();
+        long seed = 42;
+        String[] backends = { "native", "brics" };
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 == args.length) {
+                // Every option takes a value
+                System.out.println(USAGE);
+                return -1;
+            }
+            try {
+                switch (args[i]) {
+                    case "--ops":
+                        operations.addAll(BatchPipeline.parseOperations(args[++i]));
+                        break;
+                    case "--workers":
+                        workers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--backends":
+                        backends = args[++i].split(",");
+                        break;
+                    default:
+                        datasets.add(args[i]);
+                        break;
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("Not a number: " + args[i]);
+                System.out.println(USAGE);
+                return -1;
+            } catch (IllegalArgumentException e) {
+                // Unknown operations
+                System.out.println(e.getMessage());
+                System.out.println(USAGE);
+                return -1;
+            }
+        }
+        if (workers < 1) {
+            System.out.println("At least one worker is needed: " + workers);
+            System.out.println(USAGE);
+            return -1;
+        }
+        if (operations.isEmpty()) {
+            operations.addAll(OperationType.defaults());
+        }
+        if (datasets.isEmpty()) {
+            datasets.addAll(defaultDatasets());
+        }
+        if (backends.length != 2) {
+            System.out.println("Usage: --backends REFERENCE,CANDIDATE, e.g. native,brics");
+            return -1;
+        }
+        AutomatonBackend reference;
+        AutomatonBackend candidate;
+        try {
+            reference = AutomatonBackend.forName(backends[0].trim());
+            candidate = AutomatonBackend.forName(backends[1].trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
+            return -1;
+        }
+
+        DifferentialHarness harness = new DifferentialHarness(reference, candidate, workers, seed);
+        System.out.printf("%-24s %-14s %9s %10s %14s %14s %9s%n", "dataset", "operation", "results", "mismatches",
+                harness.reference.getName() + "/s", harness.candidate.getName() + "/s", "ratio");
+        for (String dataset : datasets) {
+            List<Automaton> automata = new AutomatonLoader().loadAutomataFromFile(dataset);
+            for (OperationType operation : operations) {
+                harness.compare(dataset, automata, operation);
+            }
+        }
+        System.out.println("Total mismatches: " + harness.totalMismatches);
+        return harness.totalMismatches;
+    }
+
+    // The unarydfaN.txt files of the dataset directory, by increasing N
+    static List<String> defaultDatasets() {
+        File[] files = new File(DEFAULT_DIRECTORY).listFiles((dir, name) -> name.matches("unarydfa\\d+\\.txt"));
+        if (files == null) {
+            return List.of();
+        }
+        Arrays.sort(files, Comparator.comparingInt(file -> Integer.parseInt(file.getName().replaceAll("\\D", ""))));
+        List<String> datasets = new ArrayList<>();
+        for (File file : files) {
+            datasets.add(file.getPath());
+        }
+        return datasets;
+    }
+
+    // Runs one operation over a dataset on both backends and prints a line with the mismatches and rates
+    void compare(String dataset, List<Automaton> automata, OperationType operation) {
+        int[] partners = new int[automata.size()];
+        if (operation.isBinary()) {
+            Random random = new Random(seed);
+            for (int i = 0; i < partners.length; i++) {
+                partners[i] = random.nextInt(automata.size());
+            }
+        }
+        Result[] expected = new Result[automata.size()];
+        Result[] actual = new Result[automata.size()];
+        long referenceNanos = run(reference, automata, partners, operation, expected);
+        long candidateNanos = run(candidate, automata, partners, operation, actual);
+
+        long mismatches = 0;
+        for (int i = 0; i < automata.size(); i++) {
+            if (!expected[i].matches(actual[i])) {
+                if (mismatches++ < REPORTED_MISMATCHES) {
+                    System.out.println("  Mismatch for " + operation.getName() + " of "
+                            + automata.get(i).getCurrentAutomata()
+                            + (operation.isBinary() ? " and " + automata.get(partners[i]).getCurrentAutomata() : "")
+                            + ": " + reference.getName() + " " + expected[i] + ", " + candidate.getName() + " "
+                            + actual[i]);
+                }
+            }
+        }
+        totalMismatches += mismatches;
+        double referenceRate = automata.size() / (referenceNanos / 1e9);
+        double candidateRate = automata.size() / (candidateNanos / 1e9);
+        System.out.printf("%-24s %-14s %9d %10d %14.0f %14.0f %8.2fx%n", new File(dataset).getName(),
+                operation.getName(), automata.size(), mismatches, referenceRate, candidateRate,
+                referenceRate / candidateRate);
+    }
+
+    // Computes the results of one backend into results and returns the elapsed time
+    private long run(AutomatonBackend backend, List<Automaton> automata, int[] partners, OperationType operation,
+            Result[] results) {
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        long start = System.nanoTime();
+        try {
+            pool.submit(() -> IntStream.range(0, automata.size()).parallel().forEach(i -> {
+                Automaton second = operation.isBinary() ? automata.get(partners[i]) : null;
+                Automaton dfa = backend.convertToDFA(operation.apply(automata.get(i), second));
+                results[i] = new Result(dfa, backend.minimizeDFA(dfa));
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running " + backend.getName(), e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(backend.getName() + " failed: " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return System.nanoTime() - start;
+    }
+
+    // What is compared of one result
+    private static final class Result {
+        final int determinizedStates;
+        final LassoForm determinizedLanguage;
+        final int states;
+        final int endStates;
+        final LassoForm language;
+
+        Result(Automaton determinized, Automaton minimized) {
+            this.determinizedStates = determinized.getTotalStates();
+            this.determinizedLanguage = UnaryMinimizer.minimize(determinized);
+            this.states = minimized.getTotalStates();
+            this.endStates = minimized.getEndStateCount();
+            this.language = UnaryMinimizer.minimize(minimized);
+        }
+
+        boolean matches(Result other) {
+            return determinizedLanguage.equals(other.determinizedLanguage) && states == other.states
+                    && endStates == other.endStates && language.equals(other.language);
+        }
+
+        @Override
+        public String toString() {
+            return "DFA " + determinizedStates + " states, minimal " + ComplexityHistogram.key(states, endStates)
+                    + " " + language;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.BitSet;
+
+// Builds the determinized result of square, plus and concatenate directly from the input DFAs,
+// without the intermediate epsilon-NFA. Every subset the subset construction would visit is
+// represented by a pair of longs:
+//   concatenation A.B: (state of A, bitmask of the active states of B)
+//   plus A+:           (whether the plus NFA's extra state is active, bitmask of the active states of A)
+// and the path of these pairs is walked with Brent's cycle detection, exactly like
+// UnaryDeterminizer walks the NFA's subsets. The subsets correspond one to one, so the resulting DFA
+// is the one convertToDFA builds from the operation's NFA.
+// Only deterministic operands with at most 64 states are handled; supports tells whether an
+// operation can take this path.
+class FusedOperations {
+
+    private static final int MAX_STATES = 64;
+
+    private FusedOperations() {
+    }
+
+    // Checks whether the operation can be fused for these operands (second is ignored by unary operations)
+    public static boolean supports(OperationType operation, Automaton first, Automaton second) {
+        if (operation != OperationType.SQUARE && operation != OperationType.PLUS
+                && operation != OperationType.CONCATENATION) {
+            return false;
+        }
+        return fits(first) && (!operation.isBinary() || fits(second));
+    }
+
+    // Returns the DFA that convertToDFA(operation.apply(first, second)) builds
+    public static Automaton determinize(OperationType operation, Automaton first, Automaton second) {
+        Lasso lasso = walk(newPath(operation, first, second), newPath(operation, first, second));
+        int totalStates = lasso.tailLength + lasso.cycleLength;
+        int[] successors = new int[totalStates];
+        for (int state = 0; state < totalStates; state++) {
+            successors[state] = state + 1 < totalStates ? state + 1 : lasso.tailLength;
+        }
+        return new Automaton(successors, lasso.accepting, resultName(operation, first, second) + "_DFA");
+    }
+
+    // Returns the canonical minimal form of the operation's result
+    public static LassoForm minimize(OperationType operation, Automaton first, Automaton second) {
+        Lasso lasso = walk(newPath(operation, first, second), newPath(operation, first, second));
+        return UnaryMinimizer.reduce(lasso.tailLength, lasso.cycleLength, lasso.accepting);
+    }
+
+    private static boolean fits(Automaton automaton) {
+        return automaton.isDeterministic() && automaton.getTotalStates() > 0
+                && automaton.getTotalStates() <= MAX_STATES;
+    }
+
+    // Name the operation's NFA would have, e.g. "a+b" for a concatenation
+    private static String resultName(OperationType operation, Automaton first, Automaton second) {
+        switch (operation) {
+            case SQUARE:
+                return first.getCurrentAutomata() + "^2";
+            case CONCATENATION:
+                return first.getCurrentAutomata() + "+" + second.getCurrentAutomata();
+            default:
+                return first.getCurrentAutomata();
+        }
+    }
+
+    private static Path newPath(OperationType operation, Automaton first, Automaton second) {
+        switch (operation) {
+            case SQUARE:
+                return new ConcatenationPath(first, first);
+            case PLUS:
+                return new PlusPath(first);
+            case CONCATENATION:
+                return new ConcatenationPath(first, second);
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    // Finds tail and cycle of the path with Brent's algorithm, using two cursors on the same path,
+    // and records which positions are accepting
+    private static Lasso walk(Path tortoise, Path hare) {
+        hare.advance();
+        int power = 1;
+        int cycleLength = 1;
+        while (!tortoise.isAt(hare)) {
+            if (power == cycleLength) {
+                tortoise.moveTo(hare);
+                power *= 2;
+                cycleLength = 0;
+            }
+            hare.advance();
+            cycleLength++;
+        }
+
+        tortoise.restart();
+        hare.restart();
+        for (int i = 0; i < cycleLength; i++) {
+            hare.advance();
+        }
+        int tailLength = 0;
+        while (!tortoise.isAt(hare)) {
+            tortoise.advance();
+            hare.advance();
+            tailLength++;
+        }
+
+        int totalStates = tailLength + cycleLength;
+        BitSet accepting = new BitSet(totalStates);
+        tortoise.restart();
+        for (int state = 0; state < totalStates; state++) {
+            if (tortoise.isAccepting()) {
+                accepting.set(state);
+            }
+            tortoise.advance();
+        }
+        Instrumentation.countSubsets(tortoise.steps + hare.steps);
+        return new Lasso(tailLength, cycleLength, accepting);
+    }
+
+    // Applies a DFA's transition to every state of a bitmask; missing transitions drop the state
+    private static long image(int[] successors, long states) {
+        long result = 0;
+        while (states != 0) {
+            int state = Long.numberOfTrailingZeros(states);
+            states &= states - 1;
+            int successor = successors[state];
+            if (successor >= 0) {
+                result |= 1L << successor;
+            }
+        }
+        return result;
+    }
+
+    private static int[] successorTable(Automaton automaton) {
+        int[] successors = new int[automaton.getTotalStates()];
+        for (int state = 0; state < successors.length; state++) {
+            int successor = automaton.getSuccessor(state);
+            successors[state] = successor < successors.length ? successor : Automaton.NO_STATE;
+        }
+        return successors;
+    }
+
+    private static long endStateMask(Automaton automaton) {
+        long mask = 0;
+        for (int state = 0; state < automaton.getTotalStates(); state++) {
+            if (automaton.isEndState(state)) {
+                mask |= 1L << state;
+            }
+        }
+        return mask;
+    }
+
+    private static final class Lasso {
+        final int tailLength;
+        final int cycleLength;
+        final BitSet accepting;
+
+        Lasso(int tailLength, int cycleLength, BitSet accepting) {
+            this.tailLength = tailLength;
+            this.cycleLength = cycleLength;
+            this.accepting = accepting;
+        }
+    }
+
+    // A position on the subset path, encoded as two longs
+    private abstract static class Path {
+        long high;
+        long low;
+        // Number of steps taken, for the subsets-explored counter
+        long steps;
+
+        abstract void restart();
+
+        abstract void advance();
+
+        abstract boolean isAccepting();
+
+        final void moveTo(Path other) {
+            high = other.high;
+            low = other.low;
+        }
+
+        final boolean isAt(Path other) {
+            return high == other.high && low == other.low;
+        }
+    }
+
+    // (state of A or NO_STATE, active states of B); the epsilon move from A's end states to B's start
+    // state is taken whenever A reaches an end state
+    private static final class ConcatenationPath extends Path {
+        private final int[] firstSuccessors;
+        private final long firstEndStates;
+        private final int[] secondSuccessors;
+        private final long secondEndStates;
+
+        ConcatenationPath(Automaton first, Automaton second) {
+            this.firstSuccessors = successorTable(first);
+            this.firstEndStates = endStateMask(first);
+            this.secondSuccessors = first == second ? firstSuccessors : successorTable(second);
+            this.secondEndStates = first == second ? firstEndStates : endStateMask(second);
+            restart();
+        }
+
+        @Override
+        void restart() {
+            high = 0;
+            low = (firstEndStates & 1) != 0 ? 1 : 0;
+        }
+
+        @Override
+        void advance() {
+            int state = (int) high;
+            long second = image(secondSuccessors, low);
+            if (state >= 0) {
+                state = firstSuccessors[state];
+                if (state >= 0 && (firstEndStates >>> state & 1) != 0) {
+                    second |= 1;
+                }
+            }
+            high = state;
+            low = second;
+            steps++;
+        }
+
+        @Override
+        boolean isAccepting() {
+            return (low & secondEndStates) != 0;
+        }
+    }
+
+    // (extra state of the plus NFA active, active states of A); reaching an end state of A activates the
+    // extra state and through it A's start state. Like convertToDFA, the walk starts from A's start
+    // state, so the extra state is only active after an end state was reached
+    private static final class PlusPath extends Path {
+        private final int[] successors;
+        private final long endStates;
+
+        PlusPath(Automaton automaton) {
+            this.successors = successorTable(automaton);
+            this.endStates = endStateMask(automaton);
+            restart();
+        }
+
+        @Override
+        void restart() {
+            high = (endStates & 1) != 0 ? 1 : 0;
+            low = 1;
+        }
+
+        @Override
+        void advance() {
+            long states = image(successors, low);
+            if ((states & endStates) != 0) {
+                high = 1;
+                states |= 1;
+            } else {
+                high = 0;
+            }
+            low = states;
+            steps++;
+        }
+
+        @Override
+        boolean isAccepting() {
+            return high != 0;
+        }
+    }
+}
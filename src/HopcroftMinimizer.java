@@ -0,0 +1,190 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Minimizes DFAs with Hopcroft's partition refinement in O(n log n).
+// Blocks are contiguous ranges of one permutation array of the states, so splitting a block only
+// moves its marked states to the front of the range. Predecessors come from an inverse transition
+// index in compressed (offset + target) form, and a worklist holds the blocks still to be used as splitters.
+class HopcroftMinimizer {
+
+    private HopcroftMinimizer() {
+    }
+
+    public static Automaton minimize(Automaton dfa) {
+        int realStates = dfa.getTotalStates();
+
+        // Missing transitions go to an extra non-accepting sink state, which is dropped again afterwards
+        boolean needsSink = false;
+        for (int state = 0; state < realStates; state++) {
+            if (dfa.getSuccessor(state) == Automaton.NO_STATE) {
+                needsSink = true;
+                break;
+            }
+        }
+        int n = needsSink ? realStates + 1 : realStates;
+        if (n == 0) {
+            return new Automaton(0, dfa.getCurrentAutomata() + "_minimized");
+        }
+        int[] successors = new int[n];
+        for (int state = 0; state < realStates; state++) {
+            int successor = dfa.getSuccessor(state);
+            successors[state] = successor == Automaton.NO_STATE ? realStates : successor;
+        }
+        if (needsSink) {
+            successors[realStates] = realStates;
+        }
+
+        // Inverse transition index: the predecessors of state t are inverse[inverseStart[t] .. inverseStart[t + 1])
+        int[] inverseStart = new int[n + 1];
+        for (int state = 0; state < n; state++) {
+            inverseStart[successors[state] + 1]++;
+        }
+        for (int state = 0; state < n; state++) {
+            inverseStart[state + 1] += inverseStart[state];
+        }
+        int[] inverse = new int[n];
+        int[] fill = new int[n];
+        for (int state = 0; state < n; state++) {
+            int target = successors[state];
+            inverse[inverseStart[target] + fill[target]++] = state;
+        }
+
+        // Initial partition: accepting states first, then the rest
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] blockStart = new int[n];
+        int[] blockEnd = new int[n];
+        int accepting = 0;
+        for (int state = 0; state < realStates; state++) {
+            if (dfa.isEndState(state)) {
+                accepting++;
+            }
+        }
+        int front = 0;
+        int back = accepting;
+        for (int state = 0; state < n; state++) {
+            int position = state < realStates && dfa.isEndState(state) ? front++ : back++;
+            elements[position] = state;
+            location[state] = position;
+        }
+        int blockCount = 0;
+        if (accepting > 0) {
+            blockStart[blockCount] = 0;
+            blockEnd[blockCount] = accepting;
+            blockCount++;
+        }
+        if (accepting < n) {
+            blockStart[blockCount] = accepting;
+            blockEnd[blockCount] = n;
+            blockCount++;
+        }
+        for (int block = 0; block < blockCount; block++) {
+            for (int i = blockStart[block]; i < blockEnd[block]; i++) {
+                blockOf[elements[i]] = block;
+            }
+        }
+
+        // With a single letter it is enough to start from the smaller of the two initial blocks
+        int[] worklist = new int[n];
+        boolean[] inWorklist = new boolean[n];
+        int worklistSize = 0;
+        if (blockCount == 2) {
+            int smaller = blockEnd[0] - blockStart[0] <= blockEnd[1] - blockStart[1] ? 0 : 1;
+            worklist[worklistSize++] = smaller;
+            inWorklist[smaller] = true;
+        }
+
+        int[] marked = new int[n];
+        int[] touched = new int[n];
+        int[] predecessors = new int[n];
+        long rounds = 0;
+        while (worklistSize > 0) {
+            rounds++;
+            int splitter = worklist[--worklistSize];
+            inWorklist[splitter] = false;
+
+            // Collect the predecessors of the splitter before any block (including the splitter) is rearranged
+            int predecessorCount = 0;
+            for (int i = blockStart[splitter]; i < blockEnd[splitter]; i++) {
+                int target = elements[i];
+                for (int k = inverseStart[target]; k < inverseStart[target + 1]; k++) {
+                    predecessors[predecessorCount++] = inverse[k];
+                }
+            }
+
+            // Mark them by moving each to the front of its block
+            int touchedCount = 0;
+            for (int i = 0; i < predecessorCount; i++) {
+                int state = predecessors[i];
+                int block = blockOf[state];
+                if (marked[block] == 0) {
+                    touched[touchedCount++] = block;
+                }
+                int position = location[state];
+                int swapPosition = blockStart[block] + marked[block]++;
+                int swapState = elements[swapPosition];
+                elements[position] = swapState;
+                location[swapState] = position;
+                elements[swapPosition] = state;
+                location[state] = swapPosition;
+            }
+
+            // Split every block that was only partly marked
+            for (int i = 0; i < touchedCount; i++) {
+                int block = touched[i];
+                int split = blockStart[block] + marked[block];
+                marked[block] = 0;
+                if (split == blockEnd[block]) {
+                    continue;
+                }
+                int newBlock = blockCount++;
+                blockStart[newBlock] = split;
+                blockEnd[newBlock] = blockEnd[block];
+                blockEnd[block] = split;
+                for (int k = split; k < blockEnd[newBlock]; k++) {
+                    blockOf[elements[k]] = newBlock;
+                }
+                if (inWorklist[block]) {
+                    worklist[worklistSize++] = newBlock;
+                    inWorklist[newBlock] = true;
+                } else {
+                    int smaller = blockEnd[block] - blockStart[block] <= blockEnd[newBlock] - blockStart[newBlock]
+                            ? block : newBlock;
+                    worklist[worklistSize++] = smaller;
+                    inWorklist[smaller] = true;
+                }
+            }
+        }
+
+        Instrumentation.countRefinementRounds(rounds);
+
+        // Number the blocks by their first state so the block of the start state becomes state 0;
+        // a block holding only the sink is left out
+        int[] blockId = new int[blockCount];
+        Arrays.fill(blockId, -1);
+        int minimizedStates = 0;
+        for (int state = 0; state < realStates; state++) {
+            if (blockId[blockOf[state]] < 0) {
+                blockId[blockOf[state]] = minimizedStates++;
+            }
+        }
+        Automaton minimized = new Automaton(minimizedStates, dfa.getCurrentAutomata() + "_minimized");
+        BitSet done = new BitSet(blockCount);
+        for (int state = 0; state < realStates; state++) {
+            int block = blockOf[state];
+            if (done.get(block)) {
+                continue;
+            }
+            done.set(block);
+            int target = blockId[blockOf[successors[state]]];
+            if (target >= 0) {
+                minimized.addTransition(blockId[block], target);
+            }
+            if (dfa.isEndState(state)) {
+                minimized.addEndState(blockId[block]);
+            }
+        }
+        return minimized;
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Process-wide timers and counters for the processing pipeline. Every phase keeps its call count and
+// total time in LongAdders, so worker threads record without contention, and each timed call can
+// also be emitted as a JFR event. Recording costs two System.nanoTime calls and two adds per call;
+// it can be switched off with -Dunary.instrumentation=false.
+//
+// Phase events are disabled by default because there is one per pair and phase; enable
+// "unary.Phase" in a JFR settings file to record them. Progress events are always recorded.
+class Instrumentation {
+
+    // The stages a result goes through
+    enum Phase {
+        LOAD("load"),
+        OPERATION("operation"),
+        DETERMINIZATION("determinization"),
+        MINIMIZATION("minimization"),
+        // Canonical forms of operands computed to look results up in ResultCache
+        CANONICALIZATION("canonicalization"),
+        WRITE("write");
+
+        private final String label;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getNanos() {
+            return nanos.sum();
+        }
+    }
+
+    static final boolean ENABLED = !"false".equals(System.getProperty("unary.instrumentation"));
+
+    private static final LongAdder SUBSETS_EXPLORED = new LongAdder();
+    private static final LongAdder REFINEMENT_ROUNDS = new LongAdder();
+    private static final LongAdder PAIRS = new LongAdder();
+
+    private Instrumentation() {
+    }
+
+    // Returns the start time to pass to end, or 0 when instrumentation is off
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Records a call of the given phase that began at start
+    public static void end(Phase phase, long start) {
+        if (!ENABLED) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        phase.calls.increment();
+        phase.nanos.add(elapsed);
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.getLabel();
+            event.elapsed = elapsed;
+            event.commit();
+        }
+    }
+
+    // Counts subsets visited by the subset construction
+    public static void countSubsets(long subsets) {
+        if (ENABLED) {
+            SUBSETS_EXPLORED.add(subsets);
+        }
+    }
+
+    // Counts splitter rounds of partition refinement
+    public static void countRefinementRounds(long rounds) {
+        if (ENABLED) {
+            REFINEMENT_ROUNDS.add(rounds);
+        }
+    }
+
+    // Counts finished operand pairs of binary operations
+    public static void countPairs(long pairs) {
+        if (ENABLED) {
+            PAIRS.add(pairs);
+        }
+    }
+
+    public static long getSubsetsExplored() {
+        return SUBSETS_EXPLORED.sum();
+    }
+
+    public static long getRefinementRounds() {
+        return REFINEMENT_ROUNDS.sum();
+    }
+
+    public static long getPairs() {
+        return PAIRS.sum();
+    }
+
+    // Clears all timers and counters, e.g. between the operations of one run
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            phase.calls.reset();
+            phase.nanos.reset();
+        }
+        SUBSETS_EXPLORED.reset();
+        REFINEMENT_ROUNDS.reset();
+        PAIRS.reset();
+    }
+
+    // Formats the timers and counters as a small table; pairs per second are measured against the
+    // given wall-clock time
+    public static String summary(long wallNanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %12s %12s %12s%n", "Phase", "calls", "total ms", "avg us"));
+        for (Phase phase : Phase.values()) {
+            long calls = phase.getCalls();
+            sb.append(String.format("%-16s %12d %12.1f %12.2f%n", phase.getLabel(), calls, phase.getNanos() / 1e6,
+                    calls == 0 ? 0.0 : phase.getNanos() / 1e3 / calls));
+        }
+        long pairs = getPairs();
+        sb.append(String.format("Subsets explored: %d, refinement rounds: %d, pairs: %d (%.0f pairs/s)", getSubsetsExplored(),
+                getRefinementRounds(), pairs, wallNanos <= 0 ? 0.0 : pairs * 1e9 / wallNanos));
+        return sb.toString();
+    }
+
+    // Emits a progress event; called by ProgressReporter at most once per report interval
+    static void recordProgress(String task, long done, long total, double rate) {
+        ProgressEvent event = new ProgressEvent();
+        if (event.isEnabled()) {
+            event.task = task;
+            event.done = done;
+            event.total = total;
+            event.rate = rate;
+            event.commit();
+        }
+    }
+
+    @Name("unary.Phase")
+    @Label("Pipeline Phase")
+    @Description("One timed call of a processing phase")
+    @Category("Unary Automata")
+    @Enabled(false)
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Elapsed")
+        @Timespan(Timespan.NANOSECONDS)
+        long elapsed;
+    }
+
+    @Name("unary.Progress")
+    @Label("Progress")
+    @Description("Periodic progress of a long-running task")
+    @Category("Unary Automata")
+    @StackTrace(false)
+    static class ProgressEvent extends Event {
+        @Label("Task")
+        String task;
+
+        @Label("Done")
+        long done;
+
+        @Label("Total")
+        long total;
+
+        @Label("Items per Second")
+        double rate;
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Groups automata into classes of equal languages, keyed by their canonical LassoForm, with the number
+// of automata in each class. The concatenation histogram only depends on the operand languages and
+// concatenation of unary languages is commutative, so the all-pairs histogram of a list can be
+// computed from the unordered pairs of class representatives: a pair of classes with m1 and m2
+// members stands for m1 * m2 ordered pairs in each order, a class with itself for m * m. The pairs are
+// evaluated by UnaryComplexityEngine on the classes' canonical forms.
+class LanguageClasses {
+
+    // One automaton per class, in order of first appearance
+    private final List<Automaton> representatives = new ArrayList<>();
+    private final List<LassoForm> forms = new ArrayList<>();
+    private final List<Long> sizes = new ArrayList<>();
+
+    // Splits the automata into language classes
+    public LanguageClasses(List<Automaton> automata) {
+        Map<LassoForm, Integer> classOf = new HashMap<>();
+        for (Automaton automaton : automata) {
+            LassoForm form = UnaryMinimizer.minimize(automaton);
+            Integer index = classOf.get(form);
+            if (index == null) {
+                classOf.put(form, representatives.size());
+                representatives.add(automaton);
+                forms.add(form);
+                sizes.add(1L);
+            } else {
+                sizes.set(index, sizes.get(index) + 1);
+            }
+        }
+    }
+
+    public int getClassCount() {
+        return representatives.size();
+    }
+
+    public Automaton getRepresentative(int index) {
+        return representatives.get(index);
+    }
+
+    public long getSize(int index) {
+        return sizes.get(index);
+    }
+
+    // Returns the canonical form shared by the members of a class
+    public LassoForm getForm(int index) {
+        return forms.get(index);
+    }
+
+    // Returns the (states, endStates) histogram of the minimized concatenation of all ordered pairs
+    // of the original list, evaluating every unordered pair of classes once
+    public ComplexityHistogram concatenateAllPairs(ProgressReporter progress) {
+        long start = Instrumentation.start();
+        ComplexityHistogram histogram = new ComplexityHistogram();
+        int classes = representatives.size();
+        Workspace workspace = Workspace.current();
+        for (int i = 0; i < classes; i++) {
+            long pairsInRow = 0;
+            for (int j = i; j < classes; j++) {
+                long pairs = sizes.get(i) * sizes.get(j) * (i == j ? 1 : 2);
+                histogram.addPacked(UnaryComplexityEngine.concatenateKey(forms.get(i), forms.get(j), workspace), pairs);
+                pairsInRow += pairs;
+            }
+            progress.advancePairs(pairsInRow);
+        }
+        Instrumentation.end(Instrumentation.Phase.OPERATION, start);
+        return histogram;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.BitSet;
+
+// Canonical form of a minimal unary DFA: a tail of states 0..tailLength-1 followed by a cycle of
+// states tailLength..tailLength+cycleLength-1, where the last state loops back to the first cycle
+// state. Produced by UnaryMinimizer, so two language-equivalent automata give equal (and equally
+// hashed) forms, which makes it usable as a key for deduplication and caching.
+final class LassoForm implements Comparable<LassoForm> {
+    private final int tailLength;
+    private final int cycleLength;
+    // Accepting flag of every state along the path, never modified after construction
+    private final BitSet accepting;
+
+    LassoForm(int tailLength, int cycleLength, BitSet accepting) {
+        this.tailLength = tailLength;
+        this.cycleLength = cycleLength;
+        this.accepting = accepting;
+    }
+
+    public int getTailLength() {
+        return tailLength;
+    }
+
+    public int getCycleLength() {
+        return cycleLength;
+    }
+
+    public int getTotalStates() {
+        return tailLength + cycleLength;
+    }
+
+    public int getEndStateCount() {
+        return accepting.cardinality();
+    }
+
+    // Checks whether the state at the given position of the path is accepting
+    public boolean isAccepting(int state) {
+        return accepting.get(state);
+    }
+
+    // Checks whether a^length is in the language, in constant time: past the tail the position wraps
+    // around the cycle
+    public boolean accepts(long length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative word length: " + length);
+        }
+        if (length < tailLength) {
+            return accepting.get((int) length);
+        }
+        return accepting.get(tailLength + (int) ((length - tailLength) % cycleLength));
+    }
+
+    // Checks a^lengths[i] for every i and returns the indexes of the accepted ones
+    public BitSet accepts(long[] lengths) {
+        BitSet accepted = new BitSet(lengths.length);
+        for (int i = 0; i < lengths.length; i++) {
+            if (accepts(lengths[i])) {
+                accepted.set(i);
+            }
+        }
+        return accepted;
+    }
+
+    // Builds the minimal DFA, numbering the states along the path from the start state
+    public Automaton toAutomaton(String currentAutomata) {
+        int totalStates = getTotalStates();
+        int[] successors = new int[totalStates];
+        for (int state = 0; state < totalStates; state++) {
+            successors[state] = state + 1 < totalStates ? state + 1 : tailLength;
+        }
+        return new Automaton(successors, (BitSet) accepting.clone(), currentAutomata);
+    }
+
+    // Orders forms by tail length, then cycle length, then the accepting flags along the path
+    @Override
+    public int compareTo(LassoForm other) {
+        if (tailLength != other.tailLength) {
+            return Integer.compare(tailLength, other.tailLength);
+        }
+        if (cycleLength != other.cycleLength) {
+            return Integer.compare(cycleLength, other.cycleLength);
+        }
+        for (int state = 0; state < getTotalStates(); state++) {
+            if (accepting.get(state) != other.accepting.get(state)) {
+                return accepting.get(state) ? 1 : -1;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LassoForm)) {
+            return false;
+        }
+        LassoForm other = (LassoForm) o;
+        return tailLength == other.tailLength && cycleLength == other.cycleLength && accepting.equals(other.accepting);
+    }
+
+    @Override
+    public int hashCode() {
+        return (tailLength * 31 + cycleLength) * 31 + accepting.hashCode();
+    }
+
+    // Compact encoding: tail and cycle lengths followed by one t/f flag per state, e.g. "2+3:fttft"
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(tailLength).append('+').append(cycleLength).append(':');
+        for (int state = 0; state < getTotalStates(); state++) {
+            sb.append(accepting.get(state) ? 't' : 'f');
+        }
+        return sb.toString();
+    }
+}
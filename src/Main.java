@@ -2,25 +2,122 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
-import java.util.TreeMap;
 
 public class Main {
 
+    // Determinize + minimize results shared by all operations of a run, keyed by operand languages
+    private static final ResultCache RESULT_CACHE = new ResultCache(1 << 16);
+
+    // Seed of the example samples, so that repeated runs keep the same examples
+    private static final long SAMPLE_SEED = 42;
+    // Examples kept per (states,endStates) group unless more are asked for
+    private static final int DEFAULT_SAMPLES_PER_BUCKET = 10;
+
+    // Layout of the detailed result files, set with -Dunary.results: "text" (the default) writes every
+    // kept example as Automaton.toString prints it, "compact" writes a CompactResultFile and
+    // "compressed" one with deflated blocks
+    private static final String RESULT_FORMAT = System.getProperty("unary.results", "text");
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            try {
+                BatchPipeline.run(Arrays.copyOfRange(args, 1, args.length), RESULT_CACHE);
+            } catch (IOException e) {
+                System.err.println("Error during batch run: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Batch run interrupted");
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--verify-engine")) {
+            String usage = "Usage: --verify-engine DATASET [SAMPLE_PAIRS]";
+            if (args.length < 2) {
+                System.out.println(usage);
+                return;
+            }
+            int samplePairs;
+            try {
+                samplePairs = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+            } catch (NumberFormatException e) {
+                System.out.println("Not a number of pairs: " + args[2]);
+                System.out.println(usage);
+                return;
+            }
+            try {
+                List<Automaton> automata = new AutomatonLoader().loadAutomataFromFile(args[1]);
+                UnaryComplexityEngine.verify(automata, samplePairs, SAMPLE_SEED);
+            } catch (IOException e) {
+                System.err.println("Error loading " + args[1] + ": " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--results-to-text")) {
+            // --results-to-text RESULTS [OUTPUT [DATASET]]: the text layout of a compact result file
+            String output = args.length > 2 ? args[2] : resultPath(args[1], "");
+            try {
+                CompactResultFile.convertToText(args[1], output, args.length > 3 ? args[3] : null);
+                System.out.println("Results written to: " + output);
+            } catch (IOException e) {
+                System.err.println("Error converting " + args[1] + ": " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--differential")) {
+            long mismatches;
+            try {
+                mismatches = DifferentialHarness.run(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.err.println("Error during differential run: " + e.getMessage());
+                mismatches = -1;
+            }
+            // A non-zero status on mismatches, invalid arguments or errors lets scripts gate on the run
+            if (mismatches != 0) {
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--generate")) {
+            try {
+                generateDataset(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error generating automata: " + e.getMessage());
+            }
+            return;
+        }
+        if (args.length > 0 && (args[0].equals("--shard") || args[0].equals("--merge-shards"))) {
+            try {
+                String[] rest = Arrays.copyOfRange(args, 1, args.length);
+                if (args[0].equals("--shard")) {
+                    ShardedConcatenation.run(rest);
+                } else {
+                    ShardedConcatenation.merge(rest);
+                }
+            } catch (IOException e) {
+                System.err.println("Error during sharded run: " + e.getMessage());
+            }
+            return;
+        }
+
         System.out.println("Select operation:");
         System.out.println("0) Output DFAs with a specified number of end states");
         System.out.println("1) Concatenate automata");
         System.out.println("2) Square automata");
         System.out.println("3) Positive closure operation on automata");
         System.out.println("4) Process a specific alldfahsf file");
+        System.out.println("5) Concatenate all pairs in parallel (summary only)");
+        System.out.println("6) Convert a dataset between the text and binary formats");
+        System.out.println("7) Concatenate all pairs by language class (summary only)");
+        System.out.println("8) Intersection, union, difference or complement of all pairs (summary only)");
+        System.out.println("9) Powers A^1..A^k of every automaton (summary only)");
+        System.out.println("10) Search the operands with the largest (states, endStates) results");
 
         Scanner scanner = new Scanner(System.in);
         int choice = scanner.nextInt();
@@ -38,7 +135,25 @@ public class Main {
             case 4:
                 System.out.println("Enter the specific file name (e.g., alldfahsf_10.txt):");
                 String filename = scanner.nextLine();
-                handleSpecificFile(filename);
+                handleSpecificFile(filename, readSamplesPerBucket(scanner));
+                break;
+            case 5:
+                handleParallelConcatenation(scanner);
+                break;
+            case 6:
+                handleDatasetConversion(scanner);
+                break;
+            case 7:
+                handleClassConcatenation(scanner);
+                break;
+            case 8:
+                handleBooleanOperation(scanner);
+                break;
+            case 9:
+                handlePowerSweep(scanner);
+                break;
+            case 10:
+                handleWitnessSearch(scanner);
                 break;
             default:
                 System.out.println("Invalid choice.");
@@ -47,17 +162,41 @@ public class Main {
         scanner.close();
     }
 
-    private static void handleSpecificFile(String filename) {
+    private static void handleSpecificFile(String filename, int samplesPerBucket) {
         String path = "UnaryAutomata\\output\\" + filename;
         System.out.println("Processing file: " + filename);
-        handleOperationsOnFile(path);
+        handleOperationsOnFile(path, samplesPerBucket);
+    }
+
+    // Ask how many example automata to keep per (states, endStates) group; empty keeps all, 0 only counts
+    // Reads how many examples to keep per group; the default keeps memory bounded, "all" has to be asked for
+    private static int readSamplesPerBucket(Scanner scanner) {
+        System.out.println("Enter the number of examples to keep per (states,endStates) group (empty for "
+                + DEFAULT_SAMPLES_PER_BUCKET + ", 0 for counts only, \"all\" for every example):");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return DEFAULT_SAMPLES_PER_BUCKET;
+        }
+        if (input.equalsIgnoreCase("all")) {
+            return ComplexityHistogram.KEEP_ALL_SAMPLES;
+        }
+        try {
+            int samples = Integer.parseInt(input);
+            if (samples >= 0) {
+                return samples;
+            }
+        } catch (NumberFormatException e) {
+            // Falls through to the default below
+        }
+        System.out.println("Not a number of examples: " + input + "; keeping " + DEFAULT_SAMPLES_PER_BUCKET);
+        return DEFAULT_SAMPLES_PER_BUCKET;
     }
 
     private static void handleOperations(Scanner scanner, int operationType) {
         System.out.println("Enter the input file path:");
         String inputPath = scanner.nextLine();
         if (operationType == 1) {
-            handleConcatenateOperation(inputPath);
+            handleConcatenateOperation(scanner, inputPath);
         } else {
             handleUnaryOrBinaryOperation(inputPath, operationType);
         }
@@ -144,44 +283,37 @@ public class Main {
     // }
 
     // Handle operations on a specific file
-    private static void handleOperationsOnFile(String inputFilePath) {
+    private static void handleOperationsOnFile(String inputFilePath, int samplesPerBucket) {
         AutomatonLoader loader = new AutomatonLoader();
+        long start = System.nanoTime();
         try {
-            List<String> automatonDefinitions = loader.loadAutomatonDefinitionsFromFile(inputFilePath);
-            List<Automaton> automata = loader.parseAutomata(automatonDefinitions);
+            List<Automaton> automata = loader.loadAutomataFromDefinitionsFile(inputFilePath);
 
-            performUnaryOperations(automata, inputFilePath, 2); // Square
-            performUnaryOperations(automata, inputFilePath, 3); // Positive closure
-            performConcatenation(automata, inputFilePath); // Concatenation
+            performUnaryOperations(automata, inputFilePath, 2, samplesPerBucket); // Square
+            performUnaryOperations(automata, inputFilePath, 3, samplesPerBucket); // Positive closure
+            performConcatenation(automata, inputFilePath, samplesPerBucket); // Concatenation
 
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
         } catch (IOException e) {
             System.err.println("Error processing file " + inputFilePath + ": " + e.getMessage());
         }
     }
 
     // Perform unary operations on automata (square or positive closure)
-    private static void performUnaryOperations(List<Automaton> automata, String inputFilePath, int operationType) throws IOException {
-        Map<String, List<String>> complexityMap = new HashMap<>();
-
-        for (Automaton automaton : automata) {
-            Automaton result = null;
-            if (operationType == 2) { // Square
-                result = AutomatonOperations.square(automaton);
-            } else if (operationType == 3) { // positive closure
-                result = AutomatonOperations.plus(automaton);
-            }
+    private static void performUnaryOperations(List<Automaton> automata, String inputFilePath, int operationType,
+            int samplesPerBucket) throws IOException {
+        ResultRecorder recorder = new ResultRecorder(samplesPerBucket, SAMPLE_SEED);
+        OperationType operation = operationType == 2 ? OperationType.SQUARE : OperationType.PLUS;
+        ProgressReporter progress = new ProgressReporter(operation.getName(), automata.size());
 
-            if (result != null) {
-                Automaton dfa = AutomatonOperations.convertToDFA(result);
-                Automaton minimized = AutomatonOperations.minimizeDFA(dfa);
-                String key = "(" + minimized.getTotalStates() + "," + minimized.getEndStates().size() + ")";
-                complexityMap.computeIfAbsent(key, k -> new ArrayList<>()).add(minimized.toString());
-            }
+        for (int i = 0; i < automata.size(); i++) {
+            recorder.add(i, -1, RESULT_CACHE.minimize(operation, automata.get(i), null));
+            progress.advance(1);
         }
+        progress.finish();
+        System.out.println(RESULT_CACHE);
 
-        String operationName = operationType == 2 ? "square" : "plus";
-        String outputFilename = inputFilePath.replace(".txt", "_" + operationName + ".txt");
-        saveComplexityResults(complexityMap, outputFilename, operationName);
+        saveComplexityResults(recorder, operation, automata, inputFilePath, "_" + operation.getName());
     }
 
     // Commented due to no usage - uncomment otherwise
@@ -194,62 +326,337 @@ public class Main {
     // }
 
     // Perform concatenation of automata
-    private static void performConcatenation(List<Automaton> automata, String inputFilePath) throws IOException {
-        Map<String, List<String>> complexityMap = new HashMap<>();
+    private static void performConcatenation(List<Automaton> automata, String inputFilePath, int samplesPerBucket) throws IOException {
+        ResultRecorder recorder = new ResultRecorder(samplesPerBucket, SAMPLE_SEED);
+        if (samplesPerBucket == 0) {
+            // Only counts are needed, so each unordered pair of language classes is evaluated once
+            ProgressReporter progress = new ProgressReporter("concatenation", (long) automata.size() * automata.size());
+            recorder.getHistogram().merge(new LanguageClasses(automata).concatenateAllPairs(progress));
+            progress.finish();
+            saveComplexityResults(recorder, OperationType.CONCATENATION, automata, inputFilePath, "_concatenate");
+            return;
+        }
+
+        ProgressReporter progress = new ProgressReporter("concatenation", (long) automata.size() * automata.size());
 
         for (int i = 0; i < automata.size(); i++) {
             for (int j = 0; j < automata.size(); j++) {
-                Automaton concatenated = AutomatonOperations.concatenate(automata.get(i), automata.get(j));
-                if (concatenated != null) {
-                    Automaton dfa = AutomatonOperations.convertToDFA(concatenated);
-                    Automaton minimized = AutomatonOperations.minimizeDFA(dfa);
-                    String key = "(" + minimized.getTotalStates() + "," + minimized.getEndStates().size() + ")";
-                    complexityMap.computeIfAbsent(key, k -> new ArrayList<>()).add(minimized.toString());
+                recorder.add(i, j, RESULT_CACHE.minimize(OperationType.CONCATENATION, automata.get(i), automata.get(j)));
+            }
+            progress.advancePairs(automata.size());
+        }
+        progress.finish();
+        System.out.println(RESULT_CACHE);
+
+        saveComplexityResults(recorder, OperationType.CONCATENATION, automata, inputFilePath, "_concatenate");
+    }
+
+    // Concatenate all ordered pairs of a file on several threads, keeping only the (states, endStates) counts
+    private static void handleParallelConcatenation(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+        int defaultParallelism = ParallelPairs.defaultParallelism();
+        System.out.println("Enter the parallelism level (empty for " + defaultParallelism + "):");
+        String parallelismInput = scanner.nextLine().trim();
+        int parallelism = parallelismInput.isEmpty() ? defaultParallelism : Integer.parseInt(parallelismInput);
+
+        AutomatonLoader loader = new AutomatonLoader();
+        try {
+            List<Automaton> automata = loader.loadAutomataFromFile(inputPath);
+            long start = System.nanoTime();
+            ProgressReporter progress = new ProgressReporter("concatenation", (long) automata.size() * automata.size());
+            ComplexityHistogram histogram = ParallelPairs.run(automata, automata, parallelism, progress);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Processed %d pairs on %d threads in %.1f s (%.0f pairs/s)%n", histogram.getTotal(),
+                    parallelism, seconds, histogram.getTotal() / seconds);
+
+            String outputFilename = resultPath(inputPath, "_concatenate");
+            saveComplexitySummary(histogram, outputFilename, "concatenation");
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error processing file " + inputPath + ": " + e.getMessage());
+        }
+    }
+
+    // Concatenate all ordered pairs of a file by evaluating each unordered pair of language classes once
+    private static void handleClassConcatenation(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+
+        AutomatonLoader loader = new AutomatonLoader();
+        try {
+            List<Automaton> automata = loader.loadAutomataFromFile(inputPath);
+            long start = System.nanoTime();
+            LanguageClasses classes = new LanguageClasses(automata);
+            System.out.println(automata.size() + " automata fall into " + classes.getClassCount() + " language classes");
+            ProgressReporter progress = new ProgressReporter("concatenation", (long) automata.size() * automata.size());
+            ComplexityHistogram histogram = classes.concatenateAllPairs(progress);
+            progress.finish();
+
+            String outputFilename = resultPath(inputPath, "_concatenate");
+            saveComplexitySummary(histogram, outputFilename, "concatenation");
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error processing file " + inputPath + ": " + e.getMessage());
+        }
+    }
+
+    // Apply a boolean operation to all ordered pairs of a file on several threads (the complement to every
+    // automaton), keeping only the (states, endStates) counts
+    private static void handleBooleanOperation(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+        System.out.println("Enter the operation (intersection, union, difference or complement):");
+        OperationType operation;
+        try {
+            operation = OperationType.fromName(scanner.nextLine().trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        if (!operation.isBoolean()) {
+            System.out.println("Not a boolean operation: " + operation.getName());
+            return;
+        }
+        int parallelism = 1;
+        if (operation.isBinary()) {
+            int defaultParallelism = ParallelPairs.defaultParallelism();
+            System.out.println("Enter the parallelism level (empty for " + defaultParallelism + "):");
+            String parallelismInput = scanner.nextLine().trim();
+            parallelism = parallelismInput.isEmpty() ? defaultParallelism : Integer.parseInt(parallelismInput);
+        }
+
+        AutomatonLoader loader = new AutomatonLoader();
+        try {
+            List<Automaton> automata = loader.loadAutomataFromFile(inputPath);
+            long start = System.nanoTime();
+            ComplexityHistogram histogram;
+            if (operation.isBinary()) {
+                ProgressReporter progress = new ProgressReporter(operation.getName(),
+                        (long) automata.size() * automata.size());
+                histogram = ParallelPairs.run(operation, automata, automata, parallelism, progress);
+            } else {
+                histogram = new ComplexityHistogram();
+                for (Automaton automaton : automata) {
+                    LassoForm minimized = RESULT_CACHE.minimize(operation, automaton, null);
+                    histogram.add(minimized.getTotalStates(), minimized.getEndStateCount());
                 }
             }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Processed %d results on %d threads in %.1f s (%.0f results/s)%n", histogram.getTotal(),
+                    parallelism, seconds, histogram.getTotal() / seconds);
+
+            String outputFilename = resultPath(inputPath, "_" + operation.getName());
+            saveComplexitySummary(histogram, outputFilename, operation.getName());
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error processing file " + inputPath + ": " + e.getMessage());
         }
+    }
+
+    // Count the (states, endStates) of A^k for every automaton of a file and every k up to a maximum, on
+    // several threads, writing one summary per k
+    private static void handlePowerSweep(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+        System.out.println("Enter the maximum power k:");
+        int maxK = Integer.parseInt(scanner.nextLine().trim());
+        if (maxK < 1) {
+            System.out.println("The maximum power must be at least 1.");
+            return;
+        }
+        int defaultParallelism = ParallelPairs.defaultParallelism();
+        System.out.println("Enter the parallelism level (empty for " + defaultParallelism + "):");
+        String parallelismInput = scanner.nextLine().trim();
+        int parallelism = parallelismInput.isEmpty() ? defaultParallelism : Integer.parseInt(parallelismInput);
 
-        String concatenateOutputFilename = inputFilePath.replace(".txt", "_concatenate.txt");
-        saveComplexityResults(complexityMap, concatenateOutputFilename, "concatenation");
+        AutomatonLoader loader = new AutomatonLoader();
+        try {
+            List<Automaton> automata = loader.loadAutomataFromFile(inputPath);
+            long start = System.nanoTime();
+            ProgressReporter progress = new ProgressReporter("power", (long) automata.size() * maxK);
+            ComplexityHistogram[] histograms = PowerSweep.run(automata, maxK, parallelism, progress);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Processed %d automata up to power %d on %d threads in %.1f s%n", automata.size(), maxK,
+                    parallelism, seconds);
+
+            savePowerSummaries(histograms, resultPath(inputPath, "_power"));
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error processing file " + inputPath + ": " + e.getMessage());
+        }
     }
 
-    // Save the complexity results to a file
-    private static void saveComplexityResults(Map<String, List<String>> complexityMap, String outputFile, String operationName) throws IOException {
-        // Sort the complexity map
-        Map<String, List<String>> sortedMap = new TreeMap<>(new Comparator<String>() {
-            @Override
-            public int compare(String key1, String key2) {
-                String[] parts1 = key1.substring(1, key1.length() - 1).split(",");
-                String[] parts2 = key2.substring(1, key2.length() - 1).split(",");
-                int s1 = Integer.parseInt(parts1[0].trim());
-                int f1 = Integer.parseInt(parts1[1].trim());
-                int s2 = Integer.parseInt(parts2[0].trim());
-                int f2 = Integer.parseInt(parts2[1].trim());
-                if (s1 != s2) {
-                    return Integer.compare(s2, s1);
-                } else {
-                    return Integer.compare(f2, f1);
+    // Find the k operand pairs (or operands) of a file whose results have the most states, then the most
+    // end states, pruning with the bounds of WitnessSearch instead of evaluating every pair
+    private static void handleWitnessSearch(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+        System.out.println("Enter the operation (e.g. concatenation, square or plus):");
+        OperationType operation;
+        try {
+            operation = OperationType.fromName(scanner.nextLine().trim());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        System.out.println("Enter the number of witnesses to find (empty for 10):");
+        String countInput = scanner.nextLine().trim();
+        int count = countInput.isEmpty() ? 10 : Integer.parseInt(countInput);
+        if (count < 1) {
+            System.out.println("At least one witness must be searched.");
+            return;
+        }
+
+        AutomatonLoader loader = new AutomatonLoader();
+        try {
+            List<Automaton> automata = loader.loadAutomataFromFile(inputPath);
+            long start = System.nanoTime();
+            WitnessSearch search = new WitnessSearch(automata, operation, count);
+            List<WitnessSearch.Witness> witnesses = search.search();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Evaluated %d of %d candidates over %d language classes in %.1f s%n", search.getEvaluated(),
+                    search.getCandidates(), search.getClassCount(), seconds);
+
+            String outputFilename = resultPath(inputPath, "_" + operation.getName() + "_top");
+            saveWitnesses(witnesses, outputFilename, operation);
+            System.out.println(Instrumentation.summary(System.nanoTime() - start));
+        } catch (IOException e) {
+            System.err.println("Error processing file " + inputPath + ": " + e.getMessage());
+        }
+    }
+
+    // Convert a dataset file to the other format: text to binary or binary to text
+    private static void handleDatasetConversion(Scanner scanner) {
+        System.out.println("Enter the input file path:");
+        String inputPath = scanner.nextLine();
+        System.out.println("Enter the output file path:");
+        String outputPath = scanner.nextLine();
+
+        try {
+            long count;
+            if (BinaryAutomatonFile.isBinaryFile(inputPath)) {
+                count = BinaryAutomatonFile.convertBinaryToText(inputPath, outputPath);
+            } else {
+                count = BinaryAutomatonFile.convertTextToBinary(inputPath, outputPath);
+            }
+            System.out.println("Converted " + count + " automata into " + outputPath);
+        } catch (IOException e) {
+            System.err.println("Error converting file " + inputPath + ": " + e.getMessage());
+        }
+    }
+
+    // Write the automata of a generator spec, or the ranks FROM (inclusive) to TO (exclusive) of them, to a
+    // dataset file: binary if its name ends in ".udfa", one definition per line otherwise
+    private static void generateDataset(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: --generate SPEC OUTPUT [FROM TO], e.g. --generate gen-minimal-20-e3 out.udfa");
+            return;
+        }
+        UnaryDfaGenerator generator = UnaryDfaGenerator.fromSpec(args[0]);
+        long from = args.length == 4 ? Long.parseLong(args[2]) : 0;
+        long to = args.length == 4 ? Long.parseLong(args[3]) : generator.size();
+        long count = 0;
+        try (AutomatonSource automata = generator.automata(from, to)) {
+            if (args[1].endsWith(".udfa")) {
+                count = BinaryAutomatonFile.write(automata, generator.getStates(), args[1]);
+            } else {
+                try (BufferedWriter writer = new BufferedWriter(new FileWriter(args[1]))) {
+                    while (automata.hasNext()) {
+                        if (count++ > 0) {
+                            writer.newLine();
+                        }
+                        writer.write(AutomatonLoader.toDefinition(automata.next()));
+                    }
                 }
             }
-        });
-        sortedMap.putAll(complexityMap);
+        }
+        System.out.println("Generated " + count + " of " + generator.size() + " automata into " + args[1]);
+    }
+
+    // Derive the path of a result file from the input file, e.g. "unarydfa5.txt" -> "unarydfa5_square.txt";
+    // the extension is replaced, so binary inputs never have their result written over them
+    static String resultPath(String inputPath, String suffix) {
+        return resultPath(inputPath, suffix, ".txt");
+    }
+
+    static String resultPath(String inputPath, String suffix, String fileExtension) {
+        int extension = inputPath.lastIndexOf('.');
+        int separator = Math.max(inputPath.lastIndexOf('/'), inputPath.lastIndexOf('\\'));
+        String base = extension > separator ? inputPath.substring(0, extension) : inputPath;
+        return base + suffix + fileExtension;
+    }
 
-        // Write the results to a file
+    // Save only the summary section of the complexity results to a file
+    private static void saveComplexitySummary(ComplexityHistogram histogram, String outputFile, String operationName) throws IOException {
+        long start = Instrumentation.start();
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
             writer.write("Summary of Results for " + operationName + " on unary DFAs:\n");
-            for (Map.Entry<String, List<String>> entry : sortedMap.entrySet()) {
-                writer.write(entry.getKey() + ": " + entry.getValue().size() + "\n");
+            histogram.writeSummary(writer);
+        }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        System.out.println(operationName.substring(0, 1).toUpperCase() + operationName.substring(1) + " results saved to: " + outputFile);
+    }
+
+    // Save the witnesses of a search, best first: a "(states,endStates): operands" line each, then every
+    // result as Automaton.toString prints it; the lines are also shown on the console
+    private static void saveWitnesses(List<WitnessSearch.Witness> witnesses, String outputFile, OperationType operation)
+            throws IOException {
+        long start = Instrumentation.start();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write("Top " + witnesses.size() + " results for " + operation.getName() + " on unary DFAs:\n");
+            for (WitnessSearch.Witness witness : witnesses) {
+                LassoForm result = witness.getResult();
+                String line = ComplexityHistogram.key(result.getTotalStates(), result.getEndStateCount()) + ": "
+                        + witness.getFirst().getCurrentAutomata()
+                        + (witness.getSecond() == null ? "" : " " + witness.getSecond().getCurrentAutomata());
+                writer.write(line + "\n");
+                System.out.println(line);
             }
             writer.write("\nDetailed Automata:\n");
+            for (WitnessSearch.Witness witness : witnesses) {
+                writer.write(ResultRecorder.describe(witness.getResult(), operation, witness.getFirst().getCurrentAutomata(),
+                        witness.getSecond() == null ? null : witness.getSecond().getCurrentAutomata()) + "\n");
+            }
+        }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        System.out.println("Witnesses saved to: " + outputFile);
+    }
 
-            for (Map.Entry<String, List<String>> entry : sortedMap.entrySet()) {
-                writer.write("Details for " + entry.getKey() + ":\n");
-                for (String automaton : entry.getValue()) {
-                    writer.write(automaton + "\n");
+    // Save the summaries of the powers to one file, histograms[k - 1] under the heading of power k
+    private static void savePowerSummaries(ComplexityHistogram[] histograms, String outputFile) throws IOException {
+        long start = Instrumentation.start();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            for (int k = 1; k <= histograms.length; k++) {
+                if (k > 1) {
+                    writer.write("\n");
                 }
-                writer.newLine();
+                writer.write("Summary of Results for power " + k + " on unary DFAs:\n");
+                histograms[k - 1].writeSummary(writer);
             }
         }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        System.out.println("Power results saved to: " + outputFile);
+    }
+
+    // Save the complexity results of the inputs read from inputFilePath next to it, with the given suffix;
+    // the detailed section lists the kept examples and is left out when only counts were kept. The
+    // compact formats write a ".ures" file instead, which --results-to-text turns into the text file.
+    private static void saveComplexityResults(ResultRecorder recorder, OperationType operation, List<Automaton> inputs,
+            String inputFilePath, String suffix) throws IOException {
+        long start = Instrumentation.start();
+        String outputFile;
+        if (RESULT_FORMAT.equals("compact") || RESULT_FORMAT.equals("compressed")) {
+            outputFile = resultPath(inputFilePath, suffix, ".ures");
+            CompactResultFile.write(recorder, operation, inputFilePath, RESULT_FORMAT.equals("compressed"), outputFile);
+        } else {
+            outputFile = resultPath(inputFilePath, suffix);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+                recorder.writeText(writer, operation, inputs);
+            }
+        }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        String operationName = operation.getName();
         System.out.println(operationName.substring(0, 1).toUpperCase() + operationName.substring(1) + " results saved to: " + outputFile);
     }
 
@@ -265,34 +672,40 @@ public class Main {
         String baseOutputPath = basePath + "/UnaryAutomata/output/";
 
         String inputFilePath = baseInputPath + "/" + filename;
-        String outputFilePath = baseOutputPath + "/" + filename.replace(".txt", "_filtered_" + endStates + ".txt");
+        String outputFilePath = baseOutputPath + "/" + resultPath(filename, "_filtered_" + endStates);
         System.out.println("Input path: " + inputFilePath);
         System.out.println("Output path: " + outputFilePath);
 
         AutomatonLoader loader = new AutomatonLoader();
-        try {
-            List<Automaton> automata = loader.loadAutomataFromFile(inputFilePath);
-            List<Automaton> filteredAutomata = loader.filterAutomataByEndStates(automata, endStates);
-
+        try (AutomatonSource automata = loader.openAutomataFile(inputFilePath)) {
             File outputDir = new File(baseOutputPath);
             if (!outputDir.exists()) {
                 outputDir.mkdirs();
             }
 
-            loader.saveAutomataToFile(filteredAutomata, outputFilePath);
+            // Filter while reading so that only one automaton is held in memory at a time
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
+                while (automata.hasNext()) {
+                    Automaton automaton = automata.next();
+                    if (automaton.getEndStateCount() == endStates) {
+                        writer.write(automaton.toCompactString());
+                        writer.newLine();
+                    }
+                }
+            }
             System.out.println("Filtered automata saved to: " + outputFilePath);
         } catch (IOException e) {
             System.err.println("An error occurred while loading and saving DFA: " + e.getMessage());
         }
     }
 
-    private static void handleConcatenateOperation(String inputPath) {
-        Scanner scanner = new Scanner(System.in);
+    private static void handleConcatenateOperation(Scanner scanner, String inputPath) {
         System.out.println("Enter the first input file path:");
         String firstFilename = inputPath;
 
         System.out.println("Enter the second input file path:");
         String secondFilename = scanner.nextLine();
+        int samplesPerBucket = readSamplesPerBucket(scanner);
 
         try {
             AutomatonLoader loader = new AutomatonLoader();
@@ -302,67 +715,70 @@ public class Main {
             System.out.println("Loaded " + firstAutomata.size() + " automata from the first file.");
             System.out.println("Loaded " + secondAutomata.size() + " automata from the second file.");
 
-            Map<String, List<String>> complexityMap = new HashMap<>();
-            List<Automaton> concatenatedAutomata = new ArrayList<>();
+            // Only counts and a bounded sample of example pairs are kept, never the minimized automata
+            ComplexityHistogram histogram = new ComplexityHistogram(samplesPerBucket, SAMPLE_SEED);
+            ProgressReporter progress = new ProgressReporter("concatenation", (long) firstAutomata.size() * secondAutomata.size());
 
             for (Automaton automaton1 : firstAutomata) {
                 for (Automaton automaton2 : secondAutomata) {
-                    Automaton concatenated = AutomatonOperations.concatenate(automaton1, automaton2);
-                    if (concatenated != null) {
-                        Automaton dfa = AutomatonOperations.convertToDFA(concatenated);
-                        Automaton minimized = AutomatonOperations.minimizeDFA(dfa);
-                        concatenatedAutomata.add(minimized);
-
-                        String key = "(" + minimized.getTotalStates() + "," + minimized.getEndStates().size() + ")";
-                        String value = automaton1.toCompactString() + "\t" + automaton2.toCompactString();
-                        complexityMap.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+                    Automaton dfa = AutomatonOperations.concatenateDFA(automaton1, automaton2);
+                    Automaton minimized = AutomatonOperations.minimizeDFA(dfa);
 
-                        System.out.println("Concatenated and processed a pair: " + key);
-                    }
+                    histogram.add(minimized.getTotalStates(), minimized.getEndStateCount(),
+                            () -> automaton1.toCompactString() + "\t" + automaton2.toCompactString());
+                    progress.advancePairs(1);
                 }
             }
+            progress.finish();
 
-            if (concatenatedAutomata.isEmpty()) {
+            if (histogram.getTotal() == 0) {
                 System.out.println("No automata were processed.");
             } else {
-                String outputFile = firstFilename.replace(".txt", "_concatenation_results.txt");
-                saveResultsAndDisplaySummary(complexityMap, outputFile, "concatenation");
+                String outputFile = resultPath(firstFilename, "_concatenation_results");
+                saveResultsAndDisplaySummary(histogram, outputFile, "concatenation");
                 System.out.println("Concatenation results saved to " + outputFile);
             }
+            System.out.println(Instrumentation.summary(progress.getElapsedNanos()));
         } catch (IOException e) {
             System.err.println("Error during concatenation operation: " + e.getMessage());
         }
-        scanner.close();
     }
 
     // Handle unary or binary operations on automata
     private static void handleUnaryOrBinaryOperation(String inputFilePath, int operationType) {
         AutomatonLoader loader = new AutomatonLoader();
-        try {
-            List<Automaton> automata = loader.loadAutomataFromFile(inputFilePath);
-            if (automata.isEmpty()) {
+        try (AutomatonSource automata = loader.openAutomataFile(inputFilePath)) {
+            if (!automata.hasNext()) {
                 System.out.println("No automata found in: " + inputFilePath);
                 return;
             }
 
-            List<Automaton> processedAutomata = new ArrayList<>();
-            for (Automaton automaton : automata) {
-                Automaton result = null;
-                if (operationType == 2) { // Square
-                    result = AutomatonOperations.square(automaton);
-                } else if (operationType == 3) { // Positive closure
-                    result = AutomatonOperations.plus(automaton);
-                }
+            // Apply the operation while reading and write each result right away
+            String outputFilename = resultPath(inputFilePath, "_processed_" + operationType);
+            int processedCount = 0;
+            ProgressReporter progress = new ProgressReporter(operationType == 2 ? "square" : "plus", 0);
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilename))) {
+                while (automata.hasNext()) {
+                    Automaton automaton = automata.next();
+                    Automaton result = null;
+                    if (operationType == 2) { // Square
+                        result = AutomatonOperations.square(automaton);
+                    } else if (operationType == 3) { // Positive closure
+                        result = AutomatonOperations.plus(automaton);
+                    }
 
-                if (result != null) {
-                    processedAutomata.add(result);
+                    if (result != null) {
+                        writer.write(result.toCompactString());
+                        writer.newLine();
+                        processedCount++;
+                    }
+                    progress.advance(1);
                 }
             }
+            progress.finish();
 
-            if (!processedAutomata.isEmpty()) {
-                String outputFilename = inputFilePath.replace(".txt", "_processed_" + operationType + ".txt");
-                loader.saveAutomataToFile(processedAutomata, outputFilename);
-                System.out.println("Processed " + processedAutomata.size() + " automata into " + outputFilename);
+            if (processedCount > 0) {
+                System.out.println("Processed " + processedCount + " automata into " + outputFilename);
             } else {
                 System.out.println("No processed automata for " + inputFilePath);
             }
@@ -372,39 +788,20 @@ public class Main {
     }
 
     // Save results and display summary
-    private static void saveResultsAndDisplaySummary(Map<String, List<String>> complexityMap, String outputFile, String operationName) throws IOException {
-        // Sort the complexity map
-        Map<String, List<String>> sortedMap = new TreeMap<>(new Comparator<String>() {
-            @Override
-            public int compare(String key1, String key2) {
-                String[] parts1 = key1.substring(1, key1.length() - 1).split(",");
-                String[] parts2 = key2.substring(1, key2.length() - 1).split(",");
-                int s1 = Integer.parseInt(parts1[0].trim());
-                int f1 = Integer.parseInt(parts1[1].trim());
-                int s2 = Integer.parseInt(parts2[0].trim());
-                int f2 = Integer.parseInt(parts2[1].trim());
-                if (s1 != s2) {
-                    return Integer.compare(s2, s1);
-                } else {
-                    return Integer.compare(f2, f1);
-                }
-            }
-        });
-        sortedMap.putAll(complexityMap);
-
-        // Write the results to a file
+    private static void saveResultsAndDisplaySummary(ComplexityHistogram histogram, String outputFile, String operationName) throws IOException {
+        long start = Instrumentation.start();
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
             writer.write("Results for " + operationName + " on unary DFAs:\n");
-            for (Map.Entry<String, List<String>> entry : sortedMap.entrySet()) {
-                writer.write(entry.getKey() + ":\n");
-                for (String value : entry.getValue()) {
-                    writer.write(value + "\n");
-                }
-                writer.newLine();
-
-                System.out.println(entry.getKey() + ": " + entry.getValue().size());
+            if (histogram.keepsSamples()) {
+                histogram.writeSamples(writer, "");
+            } else {
+                histogram.writeSummary(writer);
             }
         }
+        Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        Writer console = new OutputStreamWriter(System.out);
+        histogram.writeSummary(console);
+        console.flush();
         System.out.println(operationName.substring(0, 1).toUpperCase() + operationName.substring(1) + " results saved to: " + outputFile);
     }
-}
\ No newline at end of file
+}
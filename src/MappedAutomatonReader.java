@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+// Reads a dataset file of automaton definitions (one "<transitions><t/f flags>" line per automaton)
+// lazily from a memory-mapped view of the file. Each line is parsed in place into the successor table
+// and end state bitset, without creating a String for it; the automaton's identifier is derived from
+// its transitions only when asked for. The file is mapped in windows, so its size is not limited.
+class MappedAutomatonReader implements AutomatonSource {
+
+    // Size of the mapped window; lines never span two windows because the window is moved to each line start
+    private static final long WINDOW_BYTES = 1L << 28;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    // Absolute file offset of the next unread byte
+    private long position;
+    // The next automaton, parsed ahead so that hasNext can skip blank lines
+    private Automaton next;
+    private long lineNumber;
+
+    public MappedAutomatonReader(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        mapWindow(0);
+        advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Automaton next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Automaton current = next;
+        try {
+            advance();
+        } catch (IOException e) {
+            throw new IllegalStateException("Error reading line " + (lineNumber + 1), e);
+        }
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Parses the next non-blank line into next, or sets next to null at the end of the file
+    private void advance() throws IOException {
+        next = null;
+        while (next == null && position < fileSize) {
+            int lineLength = lineLengthAt(position);
+            if (lineLength < 0) {
+                // The line runs past the current window: move the window to the line start and retry
+                mapWindow(position);
+                lineLength = lineLengthAt(position);
+                if (lineLength < 0) {
+                    throw new IOException("Line " + (lineNumber + 1) + " is longer than " + WINDOW_BYTES + " bytes");
+                }
+            }
+            int offset = (int) (position - windowStart);
+            int contentLength = lineLength;
+            if (contentLength > 0 && window.get(offset + contentLength - 1) == '\r') {
+                contentLength--;
+            }
+            lineNumber++;
+            if (contentLength > 0) {
+                next = parse(offset, contentLength);
+            }
+            position += lineLength + 1;
+        }
+    }
+
+    // Returns the length of the line starting at the given offset (without its '\n'), or -1 if the line
+    // does not end inside the mapped window before the end of the file
+    private int lineLengthAt(long lineStart) {
+        int offset = (int) (lineStart - windowStart);
+        int limit = window.limit();
+        for (int i = offset; i < limit; i++) {
+            if (window.get(i) == '\n') {
+                return i - offset;
+            }
+        }
+        return windowStart + limit == fileSize ? limit - offset : -1;
+    }
+
+    private void mapWindow(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, fileSize - start));
+    }
+
+    private Automaton parse(int offset, int length) {
+        int totalStates = length / 2;
+        int[] successors = new int[totalStates];
+        BitSet endStates = new BitSet(totalStates);
+        try {
+            for (int i = 0; i < totalStates; i++) {
+                successors[i] = AutomatonLoader.charToStateNumber((char) window.get(offset + i));
+                if (window.get(offset + totalStates + i) == 't') {
+                    endStates.set(i);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+        }
+        return new Automaton(successors, endStates, null);
+    }
+}
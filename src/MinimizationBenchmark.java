@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+// Compares AutomatonOperations.minimizeDFA (Hopcroft) with the fixed-point refinement it replaced,
+// on random unary DFAs and on single-cycle DFAs, from 32 states upwards.
+// Run with: mvn -B compile exec:exec@minimization-benchmark
+public class MinimizationBenchmark {
+
+    private static final int[] SIZES = { 32, 64, 128, 256, 512, 1024 };
+    private static final int INPUTS_PER_SIZE = 20;
+
+    public static void main(String[] args) {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            List<Automaton> inputs = new ArrayList<>();
+            for (int i = 0; i < INPUTS_PER_SIZE; i++) {
+                inputs.add(randomUnaryDFA(size, random));
+            }
+            compare("random DFA, " + size + " states", inputs);
+        }
+
+        // A single cycle with one accepting state is the worst case for round-based refinement:
+        // every round only splits off one more state
+        for (int size : SIZES) {
+            int[] successors = new int[size];
+            for (int state = 0; state < size; state++) {
+                successors[state] = (state + 1) % size;
+            }
+            BitSet endStates = new BitSet(size);
+            endStates.set(size - 1);
+            List<Automaton> inputs = new ArrayList<>();
+            inputs.add(new Automaton(successors, endStates, "cycle" + size));
+            compare("single cycle, " + size + " states", inputs);
+        }
+    }
+
+    // Times both algorithms on the same inputs, after a warmup round, and checks that they agree
+    private static void compare(String label, List<Automaton> inputs) {
+        long totalStates = 0;
+        for (Automaton input : inputs) {
+            totalStates += input.getTotalStates();
+            Automaton hopcroft = AutomatonOperations.minimizeDFA(input);
+            Automaton refinement = minimizeByFixedPointRefinement(input);
+            if (hopcroft.getTotalStates() != refinement.getTotalStates()
+                    || hopcroft.getEndStateCount() != refinement.getEndStateCount()) {
+                throw new IllegalStateException("Minimizers disagree on " + input.getCurrentAutomata());
+            }
+        }
+        long hopcroftNanos = time(inputs, true);
+        long refinementNanos = time(inputs, false);
+        System.out.printf("%-40s avg %5d states  hopcroft %10.1f us/op  refinement %12.1f us/op  speedup %6.1fx%n",
+                label, totalStates / inputs.size(), hopcroftNanos / 1000.0 / inputs.size(),
+                refinementNanos / 1000.0 / inputs.size(), (double) refinementNanos / hopcroftNanos);
+    }
+
+    private static long time(List<Automaton> inputs, boolean hopcroft) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (Automaton input : inputs) {
+                if (hopcroft) {
+                    AutomatonOperations.minimizeDFA(input);
+                } else {
+                    minimizeByFixedPointRefinement(input);
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static Automaton randomUnaryDFA(int size, Random random) {
+        int[] successors = new int[size];
+        BitSet endStates = new BitSet(size);
+        for (int state = 0; state < size; state++) {
+            successors[state] = random.nextInt(size);
+            if (random.nextBoolean()) {
+                endStates.set(state);
+            }
+        }
+        return new Automaton(successors, endStates, "random" + size);
+    }
+
+    // The previous minimizeDFA: recomputes all partitions every round until nothing splits,
+    // locating partitions by linear scans
+    static Automaton minimizeByFixedPointRefinement(Automaton dfa) {
+        Set<Integer> acceptingStates = new HashSet<>(dfa.getEndStates());
+        Set<Integer> nonAcceptingStates = new HashSet<>();
+        for (int i = 0; i < dfa.getTotalStates(); i++) {
+            if (!acceptingStates.contains(i))
+                nonAcceptingStates.add(i);
+        }
+
+        List<Set<Integer>> partitions = new ArrayList<>();
+        partitions.add(acceptingStates);
+        if (!nonAcceptingStates.isEmpty())
+            partitions.add(nonAcceptingStates);
+
+        boolean changed;
+        do {
+            changed = false;
+            List<Set<Integer>> newPartitions = new ArrayList<>();
+            for (Set<Integer> partition : partitions) {
+                List<Set<Integer>> splitResults = splitPartition(partition, dfa, partitions);
+                if (splitResults.size() > 1)
+                    changed = true;
+                newPartitions.addAll(splitResults);
+            }
+            partitions = new ArrayList<>(newPartitions);
+        } while (changed);
+
+        Automaton minimizedDFA = new Automaton(0, dfa.getCurrentAutomata() + "_minimized");
+        Map<Set<Integer>, Integer> partitionToStateID = new HashMap<>();
+        int newStateID = 0;
+        for (Set<Integer> partition : partitions) {
+            minimizedDFA.incrementTotalStates();
+            partitionToStateID.put(partition, newStateID);
+            if (partition.stream().anyMatch(dfa.getEndStates()::contains)) {
+                minimizedDFA.addEndState(newStateID);
+            }
+            newStateID++;
+        }
+        for (Map.Entry<Set<Integer>, Integer> partitionEntry : partitionToStateID.entrySet()) {
+            for (Integer state : partitionEntry.getKey()) {
+                for (Integer originalToState : dfa.getTransitions(state)) {
+                    Set<Integer> targetPartition = findPartitionThatContains(originalToState, partitions);
+                    if (targetPartition != null) {
+                        minimizedDFA.addTransition(partitionEntry.getValue(), partitionToStateID.get(targetPartition));
+                    }
+                }
+            }
+        }
+        minimizedDFA.setTotalStates(newStateID);
+        return minimizedDFA;
+    }
+
+    private static List<Set<Integer>> splitPartition(Set<Integer> partition, Automaton dfa,
+            List<Set<Integer>> currentPartitions) {
+        Map<Integer, Set<Integer>> newPartitions = new HashMap<>();
+        for (Integer state : partition) {
+            Set<Integer> transitions = dfa.getTransitions(state);
+            Integer targetState = transitions.isEmpty() ? null : transitions.iterator().next();
+            Integer targetPartitionIndex = findPartitionIndex(targetState, currentPartitions);
+            newPartitions.computeIfAbsent(targetPartitionIndex, k -> new HashSet<>()).add(state);
+        }
+        return new ArrayList<>(newPartitions.values());
+    }
+
+    private static Integer findPartitionIndex(Integer state, List<Set<Integer>> partitions) {
+        for (int i = 0; i < partitions.size(); i++) {
+            if (state == null || partitions.get(i).contains(state)) {
+                return i;
+            }
+        }
+        return null;
+    }
+
+    private static Set<Integer> findPartitionThatContains(Integer state, List<Set<Integer>> partitions) {
+        for (Set<Integer> partition : partitions) {
+            if (partition.contains(state)) {
+                return partition;
+            }
+        }
+        return null;
+    }
+}
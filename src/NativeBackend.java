@@ -0,0 +1,22 @@
+// The project's own engine: subset construction along the lasso path (UnaryDeterminizer), linear-time
+// lasso minimization for lasso-shaped DFAs and Hopcroft's partition refinement for all others
+class NativeBackend implements AutomatonBackend {
+
+    @Override
+    public String getName() {
+        return "native";
+    }
+
+    @Override
+    public Automaton convertToDFA(Automaton nfa) {
+        return UnaryDeterminizer.determinize(nfa);
+    }
+
+    @Override
+    public Automaton minimizeDFA(Automaton dfa) {
+        if (UnaryMinimizer.isLasso(dfa)) {
+            return UnaryMinimizer.minimize(dfa).toAutomaton(dfa.getCurrentAutomata() + "_minimized");
+        }
+        return HopcroftMinimizer.minimize(dfa);
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.List;
+
+// The operations whose results we study, with the construction that builds each result as an NFA
+// (a DFA for the boolean operations)
+enum OperationType {
+    SQUARE("square", false),
+    PLUS("plus", false),
+    CONCATENATION("concatenation", true),
+    INTERSECTION("intersection", true),
+    UNION("union", true),
+    DIFFERENCE("difference", true),
+    COMPLEMENT("complement", false);
+
+    private final String name;
+    private final boolean binary;
+
+    OperationType(String name, boolean binary) {
+        this.name = name;
+        this.binary = binary;
+    }
+
+    // Returns the name used in result files, e.g. "square"
+    public String getName() {
+        return name;
+    }
+
+    // Looks up an operation by its name, e.g. "plus"
+    public static OperationType fromName(String name) {
+        for (OperationType operation : values()) {
+            if (operation.name.equals(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+
+    // Checks whether the operation takes two operands
+    public boolean isBinary() {
+        return binary;
+    }
+
+    // Checks whether the operation is intersection, union, difference or complement
+    public boolean isBoolean() {
+        return this == INTERSECTION || this == UNION || this == DIFFERENCE || this == COMPLEMENT;
+    }
+
+    // Checks whether swapping the operands leaves the result's language unchanged; concatenation of
+    // unary languages is commutative
+    public boolean isCommutative() {
+        return this == CONCATENATION || this == INTERSECTION || this == UNION;
+    }
+
+    // The operations run when none are chosen: square, plus and concatenation
+    public static List<OperationType> defaults() {
+        return List.of(SQUARE, PLUS, CONCATENATION);
+    }
+
+    // Builds the (not yet determinized) result; second is ignored by unary operations
+    public Automaton apply(Automaton first, Automaton second) {
+        long start = Instrumentation.start();
+        Automaton result;
+        switch (this) {
+            case SQUARE:
+                result = AutomatonOperations.square(first);
+                break;
+            case PLUS:
+                result = AutomatonOperations.plus(first);
+                break;
+            case CONCATENATION:
+                result = AutomatonOperations.concatenate(first, second);
+                break;
+            case INTERSECTION:
+                result = AutomatonOperations.intersection(first, second);
+                break;
+            case UNION:
+                result = AutomatonOperations.union(first, second);
+                break;
+            case DIFFERENCE:
+                result = AutomatonOperations.difference(first, second);
+                break;
+            case COMPLEMENT:
+                result = AutomatonOperations.complement(first);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + this);
+        }
+        Instrumentation.end(Instrumentation.Phase.OPERATION, start);
+        return result;
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntToLongFunction;
+
+// Measures throughput and allocation per operation of AutomatonOperations and AutomatonLoader on the
+// UnaryAutomataList/unarydfaN.txt datasets. Like JMH, every benchmark runs in FORKS fresh JVMs, so that
+// the JIT profile of one benchmark cannot slow down the next, and each fork is warmed up and then timed
+// over several fixed-length iterations. The error is the half-width of the 99.9% confidence interval of
+// the mean over all measured iterations; allocation comes from the JVM's per-thread allocation counter.
+// Run with: mvn -B compile exec:exec@operations-benchmark [-Dbenchmark.args="DIRECTORY N ..."]
+// convertToDFA and minimizeDFA run on the configured backend; add -Dunary.backend=brics to measure
+// dk.brics.automaton instead.
+public class OperationsBenchmark {
+
+    private static final String DEFAULT_DATASET_DIRECTORY = "UnaryAutomataList";
+    private static final int[] DEFAULT_SIZES = { 4, 8, 12 };
+    private static final String[] BENCHMARKS = { "parse", "square", "plus", "concatenate", "epsilonClosure",
+            "convertToDFA", "minimizeDFA" };
+    // Argument that makes a forked JVM run one benchmark: --fork DATASET BENCHMARK
+    private static final String FORK_ARGUMENT = "--fork";
+    // At most this many automata of a dataset are used, spread evenly over the file
+    private static final int MAX_INPUTS = 1024;
+    private static final int FORKS = 2;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 500_000_000L;
+    // Two-sided 99.9% quantiles of Student's t distribution for 1 to 30 degrees of freedom
+    private static final double[] T_QUANTILES = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041,
+            4.781, 4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792,
+            3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+    // Results are folded into this field so that the JIT cannot drop the benchmarked calls
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 3 && args[0].equals(FORK_ARGUMENT)) {
+            runFork(args[1], args[2]);
+            return;
+        }
+        String directory = args.length > 0 ? args[0] : DEFAULT_DATASET_DIRECTORY;
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-14s %4s %7s %14s %12s %12s%n", "Benchmark", "N", "inputs", "ops/s", "error", "B/op");
+        for (int size : sizes) {
+            String path = directory + File.separator + "unarydfa" + size + ".txt";
+            if (!new File(path).exists()) {
+                System.out.println("Skipping missing dataset " + path);
+                continue;
+            }
+            for (String benchmark : BENCHMARKS) {
+                measure(path, size, benchmark);
+            }
+        }
+    }
+
+    // Runs one benchmark in FORKS separate JVMs and prints the combined result
+    private static void measure(String path, int size, String benchmark) throws IOException, InterruptedException {
+        List<Double> throughput = new ArrayList<>();
+        long operations = 0;
+        long allocatedBytes = 0;
+        int inputs = 0;
+        for (int fork = 0; fork < FORKS; fork++) {
+            Process process = new ProcessBuilder(forkCommand(path, benchmark))
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                // The fork reports "inputs N", one "iteration OPS_PER_SECOND" line per measured iteration and
+                // "allocated BYTES OPERATIONS", with BYTES negative if the JVM does not count allocation
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split(" ");
+                    switch (fields[0]) {
+                        case "inputs":
+                            inputs = Integer.parseInt(fields[1]);
+                            break;
+                        case "iteration":
+                            throughput.add(Double.parseDouble(fields[1]));
+                            break;
+                        case "allocated":
+                            long bytes = Long.parseLong(fields[1]);
+                            allocatedBytes = bytes < 0 || allocatedBytes < 0 ? -1 : allocatedBytes + bytes;
+                            operations += Long.parseLong(fields[2]);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+            if (process.waitFor() != 0) {
+                throw new IOException("Fork of " + benchmark + " on " + path + " failed");
+            }
+        }
+
+        double mean = 0;
+        for (double value : throughput) {
+            mean += value;
+        }
+        mean /= throughput.size();
+        double variance = 0;
+        for (double value : throughput) {
+            variance += (value - mean) * (value - mean);
+        }
+        int degrees = throughput.size() - 1;
+        double quantile = T_QUANTILES[Math.min(degrees, T_QUANTILES.length) - 1];
+        double error = quantile * Math.sqrt(variance / degrees / throughput.size());
+        double bytesPerOperation = allocatedBytes < 0 ? Double.NaN : (double) allocatedBytes / operations;
+        System.out.printf("%-14s %4d %7d %14.1f %12.1f %12.1f%n", benchmark, size, inputs, mean, error, bytesPerOperation);
+    }
+
+    // The command line of a fork: the same java binary, class path and backend as this JVM
+    private static List<String> forkCommand(String path, String benchmark) {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        String backend = System.getProperty("unary.backend");
+        if (backend != null) {
+            command.add("-Dunary.backend=" + backend);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(OperationsBenchmark.class.getName());
+        command.add(FORK_ARGUMENT);
+        command.add(path);
+        command.add(benchmark);
+        return command;
+    }
+
+    // Runs one benchmark on one dataset inside a fork and reports its iterations on standard output
+    private static void runFork(String path, String benchmark) throws IOException {
+        AutomatonLoader loader = new AutomatonLoader();
+        List<String> definitions = sample(readDefinitions(path));
+        List<Automaton> automata = sample(loader.loadAutomataFromFile(path));
+        int count = automata.size();
+
+        // Inputs of the later pipeline stages, built once so that only the stage itself is measured;
+        // the concatenation of each automaton with the next one stands in for the operations' NFAs
+        Automaton[] nfas = new Automaton[count];
+        Automaton[] dfas = new Automaton[count];
+        for (int i = 0; i < count; i++) {
+            nfas[i] = AutomatonOperations.concatenate(automata.get(i), automata.get((i + 1) % count));
+            dfas[i] = AutomatonOperations.convertToDFA(nfas[i]);
+        }
+        Set<Integer> startState = Collections.singleton(0);
+
+        Map<String, IntToLongFunction> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("parse", i -> loader.parseAutomaton(definitions.get(i)).getTotalStates());
+        benchmarks.put("square", i -> AutomatonOperations.square(automata.get(i)).getTotalStates());
+        benchmarks.put("plus", i -> AutomatonOperations.plus(automata.get(i)).getTotalStates());
+        benchmarks.put("concatenate",
+                i -> AutomatonOperations.concatenate(automata.get(i), automata.get((i + 1) % count)).getTotalStates());
+        benchmarks.put("epsilonClosure", i -> nfas[i].epsilonClosure(startState).size());
+        benchmarks.put("convertToDFA", i -> AutomatonOperations.convertToDFA(nfas[i]).getTotalStates());
+        benchmarks.put("minimizeDFA", i -> AutomatonOperations.minimizeDFA(dfas[i]).getTotalStates());
+        IntToLongFunction operation = benchmarks.get(benchmark);
+        if (operation == null) {
+            throw new IllegalArgumentException("Unknown benchmark: " + benchmark);
+        }
+
+        // Each call of operation with the next input index counts as one operation
+        for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++) {
+            runIteration(operation, count);
+        }
+        System.out.println("inputs " + count);
+        long operations = 0;
+        long allocatedBytes = 0;
+        for (int iteration = 0; iteration < MEASUREMENT_ITERATIONS; iteration++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long done = runIteration(operation, count);
+            long elapsed = System.nanoTime() - start;
+            allocatedBytes += allocatedBytes() - allocatedBefore;
+            operations += done;
+            System.out.println("iteration " + done * 1e9 / elapsed);
+        }
+        System.out.println("allocated " + (allocatedBytes() < 0 ? -1 : allocatedBytes) + " " + operations);
+    }
+
+    // Cycles through the inputs until the iteration time is used up and returns the number of operations
+    private static long runIteration(IntToLongFunction operation, int inputs) {
+        long deadline = System.nanoTime() + ITERATION_NANOS;
+        long operations = 0;
+        long accumulator = 0;
+        int index = 0;
+        do {
+            accumulator += operation.applyAsLong(index);
+            operations++;
+            if (++index == inputs) {
+                index = 0;
+            }
+        } while (System.nanoTime() < deadline);
+        sink += accumulator;
+        return operations;
+    }
+
+    // Returns the bytes allocated by the current thread so far, or -1 if the JVM does not count them
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counters = (com.sun.management.ThreadMXBean) bean;
+            if (counters.isThreadAllocatedMemorySupported() && counters.isThreadAllocatedMemoryEnabled()) {
+                return counters.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    // Reads the definition lines of a dataset, skipping blank lines
+    private static List<String> readDefinitions(String path) throws IOException {
+        List<String> definitions = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path))) {
+            if (!line.trim().isEmpty()) {
+                definitions.add(line.trim());
+            }
+        }
+        return definitions;
+    }
+
+    // Picks at most MAX_INPUTS elements, evenly spread over the list
+    private static <T> List<T> sample(List<T> all) {
+        if (all.size() <= MAX_INPUTS) {
+            return all;
+        }
+        List<T> sampled = new ArrayList<>(MAX_INPUTS);
+        for (int i = 0; i < MAX_INPUTS; i++) {
+            sampled.add(all.get((int) ((long) i * all.size() / MAX_INPUTS)));
+        }
+        return sampled;
+    }
+}
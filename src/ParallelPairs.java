@@ -0,0 +1,126 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Applies a binary operation (concatenation, intersection, union or difference) to all pairs of two
+// automaton lists on a ForkJoinPool. The i x j pair space is split recursively into tiles; every tile
+// fills its own ComplexityHistogram and the histograms are merged on the way back up, so worker threads
+// never share mutable state. The operands' canonical forms are computed once, and every pair is
+// evaluated by UnaryComplexityEngine in the worker's Workspace, so the inner loop does not allocate.
+class ParallelPairs {
+
+    // Tiles with at most this many pairs are processed by a single task
+    private static final int TILE_PAIRS = 1024;
+
+    private ParallelPairs() {
+    }
+
+    // Returns the (states, endStates) histogram of the minimized concatenation of every pair
+    // (first.get(i), second.get(j)), computed with the given number of worker threads; every finished
+    // row of a tile is reported to progress
+    public static ComplexityHistogram run(List<Automaton> first, List<Automaton> second, int parallelism,
+            ProgressReporter progress) {
+        return run(OperationType.CONCATENATION, first, second, parallelism, progress);
+    }
+
+    // The same for any binary operation, e.g. intersection
+    public static ComplexityHistogram run(OperationType operation, List<Automaton> first, List<Automaton> second,
+            int parallelism, ProgressReporter progress) {
+        LassoForm[] firstForms = forms(first);
+        LassoForm[] secondForms = first == second ? firstForms : forms(second);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return run(operation, firstForms, secondForms, pool, progress);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // The same for operands given by their canonical forms, on a pool of the caller; callers that cover
+    // the pair space in chunks compute the forms and start the workers once for all chunks
+    public static ComplexityHistogram run(OperationType operation, LassoForm[] first, LassoForm[] second,
+            ForkJoinPool pool, ProgressReporter progress) {
+        return pool.invoke(new TileTask(operation, first, second, progress, 0, first.length, 0, second.length));
+    }
+
+    // Returns the canonical forms of the automata, in list order
+    static LassoForm[] forms(List<Automaton> automata) {
+        long start = Instrumentation.start();
+        LassoForm[] forms = new LassoForm[automata.size()];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = UnaryMinimizer.minimize(automata.get(i));
+        }
+        Instrumentation.end(Instrumentation.Phase.MINIMIZATION, start);
+        return forms;
+    }
+
+    // Returns the parallelism to use when none is configured
+    public static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    private static final class TileTask extends RecursiveTask<ComplexityHistogram> {
+        private static final long serialVersionUID = 1L;
+
+        private final OperationType operation;
+        private final transient LassoForm[] first;
+        private final transient LassoForm[] second;
+        private final transient ProgressReporter progress;
+        private final int rowStart;
+        private final int rowEnd;
+        private final int columnStart;
+        private final int columnEnd;
+
+        TileTask(OperationType operation, LassoForm[] first, LassoForm[] second, ProgressReporter progress,
+                int rowStart, int rowEnd, int columnStart, int columnEnd) {
+            this.operation = operation;
+            this.first = first;
+            this.second = second;
+            this.progress = progress;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.columnStart = columnStart;
+            this.columnEnd = columnEnd;
+        }
+
+        @Override
+        protected ComplexityHistogram compute() {
+            int rows = rowEnd - rowStart;
+            int columns = columnEnd - columnStart;
+            if ((long) rows * columns <= TILE_PAIRS || (rows <= 1 && columns <= 1)) {
+                return computeTile();
+            }
+
+            // Split along the longer side
+            TileTask left;
+            TileTask right;
+            if (rows >= columns) {
+                int middle = rowStart + rows / 2;
+                left = new TileTask(operation, first, second, progress, rowStart, middle, columnStart, columnEnd);
+                right = new TileTask(operation, first, second, progress, middle, rowEnd, columnStart, columnEnd);
+            } else {
+                int middle = columnStart + columns / 2;
+                left = new TileTask(operation, first, second, progress, rowStart, rowEnd, columnStart, middle);
+                right = new TileTask(operation, first, second, progress, rowStart, rowEnd, middle, columnEnd);
+            }
+            left.fork();
+            ComplexityHistogram histogram = right.compute();
+            histogram.merge(left.join());
+            return histogram;
+        }
+
+        private ComplexityHistogram computeTile() {
+            long start = Instrumentation.start();
+            ComplexityHistogram histogram = new ComplexityHistogram();
+            Workspace workspace = Workspace.current();
+            for (int i = rowStart; i < rowEnd; i++) {
+                for (int j = columnStart; j < columnEnd; j++) {
+                    histogram.addPacked(UnaryComplexityEngine.key(operation, first[i], second[j], workspace), 1);
+                }
+                progress.advancePairs(columnEnd - columnStart);
+            }
+            Instrumentation.end(Instrumentation.Phase.OPERATION, start);
+            return histogram;
+        }
+    }
+}
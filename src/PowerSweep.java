@@ -0,0 +1,88 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Counts the (states, endStates) of the minimal DFAs of the powers A^1..A^maxK of every automaton of a
+// dataset, one histogram per k, on a ForkJoinPool. The automata are split recursively into chunks
+// whose histograms are merged on the way back up, as in ParallelPairs. Each automaton's
+// powers come from UnaryComplexityEngine.powerKeys, which builds every power from the previous one.
+class PowerSweep {
+
+    // Chunks with at most this many automata are processed by a single task
+    private static final int CHUNK_AUTOMATA = 16;
+
+    private PowerSweep() {
+    }
+
+    // Returns the histograms of A^k for k = 1..maxK at index k - 1, computed with the given number of
+    // worker threads; every finished automaton is reported to progress as maxK results
+    public static ComplexityHistogram[] run(List<Automaton> automata, int maxK, int parallelism,
+            ProgressReporter progress) {
+        long start = Instrumentation.start();
+        LassoForm[] forms = new LassoForm[automata.size()];
+        for (int i = 0; i < forms.length; i++) {
+            forms[i] = UnaryMinimizer.minimize(automata.get(i));
+        }
+        Instrumentation.end(Instrumentation.Phase.MINIMIZATION, start);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ChunkTask(forms, maxK, progress, 0, forms.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveTask<ComplexityHistogram[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient LassoForm[] forms;
+        private final int maxK;
+        private final transient ProgressReporter progress;
+        private final int start;
+        private final int end;
+
+        ChunkTask(LassoForm[] forms, int maxK, ProgressReporter progress, int start, int end) {
+            this.forms = forms;
+            this.maxK = maxK;
+            this.progress = progress;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected ComplexityHistogram[] compute() {
+            if (end - start <= CHUNK_AUTOMATA) {
+                return computeChunk();
+            }
+            int middle = start + (end - start) / 2;
+            ChunkTask left = new ChunkTask(forms, maxK, progress, start, middle);
+            ChunkTask right = new ChunkTask(forms, maxK, progress, middle, end);
+            left.fork();
+            ComplexityHistogram[] histograms = right.compute();
+            ComplexityHistogram[] other = left.join();
+            for (int k = 0; k < maxK; k++) {
+                histograms[k].merge(other[k]);
+            }
+            return histograms;
+        }
+
+        private ComplexityHistogram[] computeChunk() {
+            long begin = Instrumentation.start();
+            ComplexityHistogram[] histograms = new ComplexityHistogram[maxK];
+            for (int k = 0; k < maxK; k++) {
+                histograms[k] = new ComplexityHistogram();
+            }
+            Workspace workspace = Workspace.current();
+            long[] keys = new long[maxK + 1];
+            for (int i = start; i < end; i++) {
+                UnaryComplexityEngine.powerKeys(forms[i], keys, workspace);
+                for (int k = 1; k <= maxK; k++) {
+                    histograms[k - 1].addPacked(keys[k], 1);
+                }
+                progress.advance(maxK);
+            }
+            Instrumentation.end(Instrumentation.Phase.OPERATION, begin);
+            return histograms;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Reports the progress of a long loop at most once per interval: items done, rate and estimated time
+// left. Any number of threads may call advance; between reports a call costs one add and one
+// System.nanoTime, so it can be called once per pair.
+class ProgressReporter {
+
+    private static final long DEFAULT_INTERVAL_NANOS = 2_000_000_000L;
+
+    private final String task;
+    private final long total;
+    private final long intervalNanos;
+    private final long startNanos;
+    private final LongAdder done = new LongAdder();
+    private final AtomicLong nextReportNanos;
+
+    // Creates a reporter for total items (0 if unknown) that prints every two seconds
+    public ProgressReporter(String task, long total) {
+        this(task, total, DEFAULT_INTERVAL_NANOS);
+    }
+
+    public ProgressReporter(String task, long total, long intervalNanos) {
+        this.task = task;
+        this.total = total;
+        this.intervalNanos = intervalNanos;
+        this.startNanos = System.nanoTime();
+        this.nextReportNanos = new AtomicLong(startNanos + intervalNanos);
+    }
+
+    // Marks items as done and prints a progress line if the interval has passed
+    public void advance(long items) {
+        done.add(items);
+        long now = System.nanoTime();
+        long next = nextReportNanos.get();
+        // Only the thread that moves the deadline forward prints
+        if (now >= next && nextReportNanos.compareAndSet(next, now + intervalNanos)) {
+            report(now);
+        }
+    }
+
+    // Marks operand pairs as done, counting them for the instrumentation summary as well; loops over
+    // single operands or other items use advance
+    public void advancePairs(long pairs) {
+        Instrumentation.countPairs(pairs);
+        advance(pairs);
+    }
+
+    public long getDone() {
+        return done.sum();
+    }
+
+    // Returns the nanoseconds since the reporter was created
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    // Prints the final line
+    public void finish() {
+        report(System.nanoTime());
+    }
+
+    private void report(long now) {
+        long count = done.sum();
+        double seconds = (now - startNanos) / 1e9;
+        double rate = seconds > 0 ? count / seconds : 0;
+        StringBuilder sb = new StringBuilder(task).append(": ").append(count);
+        if (total > 0) {
+            sb.append('/').append(total).append(String.format(" (%.1f%%)", 100.0 * count / total));
+        }
+        sb.append(String.format(", %.0f/s", rate));
+        if (total > 0 && rate > 0 && count < total) {
+            sb.append(", ETA ").append(formatDuration((long) ((total - count) / rate)));
+        } else if (total > 0 && count >= total) {
+            sb.append(", done in ").append(formatDuration((long) seconds));
+        }
+        System.out.println(sb);
+        Instrumentation.recordProgress(task, count, total, rate);
+    }
+
+    // Formats seconds as h:mm:ss
+    static String formatDuration(long seconds) {
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
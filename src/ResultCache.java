@@ -0,0 +1,163 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+// Thread-safe, size-bounded memo of determinize + minimize results. The result of square, plus and
+// concatenation only depends on the languages of the operands, so entries are keyed by the operation
+// and the canonical LassoForm of each operand: language-equivalent inputs share one entry, and so do
+// the two orders of a concatenation.
+// The cache is split into segments, each a small LRU map behind its own lock, so parallel callers
+// rarely contend; results are computed outside the lock.
+class ResultCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // Creates a cache holding at most roughly maxEntries results
+    public ResultCache(int maxEntries) {
+        int perSegment = Math.max(1, maxEntries / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    // Returns the canonical minimal DFA of the operation applied to the operands (second is ignored
+    // by unary operations), computing and storing it if it is not cached yet
+    public LassoForm minimize(OperationType operation, Automaton first, Automaton second) {
+        long start = Instrumentation.start();
+        LassoForm firstForm = UnaryMinimizer.minimize(first);
+        LassoForm secondForm = operation.isBinary() ? UnaryMinimizer.minimize(second) : null;
+        Instrumentation.end(Instrumentation.Phase.CANONICALIZATION, start);
+        // Both operand orders of a commutative operation share one entry
+        if (operation.isCommutative() && firstForm.compareTo(secondForm) > 0) {
+            LassoForm swap = firstForm;
+            firstForm = secondForm;
+            secondForm = swap;
+        }
+        Key key = new Key(operation, firstForm, secondForm);
+        Segment segment = segments[(key.hashCode() & Integer.MAX_VALUE) % SEGMENTS];
+        LassoForm result = segment.get(key);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        // The operands' canonical forms are known at this point, so the closed form applies directly
+        start = Instrumentation.start();
+        result = UnaryComplexityEngine.apply(operation, firstForm, secondForm);
+        Instrumentation.end(Instrumentation.Phase.OPERATION, start);
+        segment.put(key, result);
+        return result;
+    }
+
+    // Computes the canonical minimal DFA of the operation applied to the operands without caching it,
+    // on the fused path where the operands allow it
+    static LassoForm compute(OperationType operation, Automaton first, Automaton second) {
+        LassoForm result;
+        long start = Instrumentation.start();
+        if (FusedOperations.supports(operation, first, second)) {
+            result = FusedOperations.minimize(operation, first, second);
+            Instrumentation.end(Instrumentation.Phase.DETERMINIZATION, start);
+        } else {
+            Automaton dfa = AutomatonOperations.convertToDFA(operation.apply(first, second));
+            start = Instrumentation.start();
+            result = UnaryMinimizer.minimize(dfa);
+            Instrumentation.end(Instrumentation.Phase.MINIMIZATION, start);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    // Returns the number of cached results
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        long hitCount = getHits();
+        long lookups = hitCount + getMisses();
+        return String.format("Result cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d entries",
+                hitCount, getMisses(), lookups == 0 ? 0.0 : 100.0 * hitCount / lookups, getEvictions(), size());
+    }
+
+    private static final class Key {
+        private final OperationType operation;
+        private final LassoForm first;
+        private final LassoForm second;
+        private final int hash;
+
+        Key(OperationType operation, LassoForm first, LassoForm second) {
+            this.operation = operation;
+            this.first = first;
+            this.second = second;
+            this.hash = Objects.hash(operation, first, second);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return operation == other.operation && first.equals(other.first) && Objects.equals(second, other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    // One LRU map in access order; the least recently used entry is dropped once the segment is full
+    private final class Segment {
+        private final Map<Key, LassoForm> entries;
+
+        Segment(int capacity) {
+            this.entries = new LinkedHashMap<Key, LassoForm>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, LassoForm> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        synchronized LassoForm get(Key key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(Key key, LassoForm result) {
+            entries.putIfAbsent(key, result);
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
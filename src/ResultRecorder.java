@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+// Counts results like ComplexityHistogram and keeps a reservoir sample of them per (states, endStates)
+// bucket, but as records of the input ids and the canonical result instead of formatted text, drawn with
+// BucketSampler. The text layout is only produced when writing, and CompactResultFile stores the records
+// as they are.
+class ResultRecorder {
+
+    // One result: the positions of its operands in the input list (second is -1 for unary operations)
+    // and the canonical form of its minimal DFA
+    static final class Record {
+        private final int first;
+        private final int second;
+        private final LassoForm result;
+
+        Record(int first, int second, LassoForm result) {
+            this.first = first;
+            this.second = second;
+            this.result = result;
+        }
+
+        public int getFirst() {
+            return first;
+        }
+
+        public int getSecond() {
+            return second;
+        }
+
+        public LassoForm getResult() {
+            return result;
+        }
+    }
+
+    private final ComplexityHistogram histogram = new ComplexityHistogram();
+    // Sampled records per bucket
+    private final BucketSampler<Record> samples;
+
+    // Creates a recorder that keeps up to samplesPerBucket records per bucket, drawn with the given seed;
+    // ComplexityHistogram.KEEP_ALL_SAMPLES keeps every record in the order it was added
+    public ResultRecorder(int samplesPerBucket, long seed) {
+        this.samples = new BucketSampler<>(samplesPerBucket, seed);
+    }
+
+    // Records one result
+    public void add(int first, int second, LassoForm result) {
+        int states = result.getTotalStates();
+        int endStates = result.getEndStateCount();
+        histogram.add(states, endStates);
+        samples.offer(ComplexityHistogram.packKey(states, endStates), histogram.getCount(states, endStates),
+                () -> new Record(first, second, result));
+    }
+
+    // Appends a record to a bucket without counting it, for records read back from a file
+    void addSample(Record record) {
+        samples.append(ComplexityHistogram.packKey(record.result.getTotalStates(), record.result.getEndStateCount()),
+                record);
+    }
+
+    // Returns the counts of all recorded results
+    public ComplexityHistogram getHistogram() {
+        return histogram;
+    }
+
+    // Checks whether records are kept at all
+    public boolean keepsSamples() {
+        return samples.keepsSamples();
+    }
+
+    // Returns the records kept for a bucket
+    public List<Record> getRecords(int states, int endStates) {
+        return samples.get(ComplexityHistogram.packKey(states, endStates));
+    }
+
+    // Writes the layout of the text result files: the summary and, when records are kept, a
+    // "Details for (states,endStates):" section per bucket listing each result as Automaton.toString
+    // prints it. inputs are the automata the record ids refer to.
+    public void writeText(Writer writer, OperationType operation, List<Automaton> inputs) throws IOException {
+        writer.write("Summary of Results for " + operation.getName() + " on unary DFAs:\n");
+        histogram.writeSummary(writer);
+        if (!keepsSamples()) {
+            return;
+        }
+        writer.write("\nDetailed Automata:\n");
+        for (long key : histogram.packedKeys()) {
+            int states = (int) (key >>> 32);
+            int endStates = (int) key;
+            writer.write("Details for " + ComplexityHistogram.key(states, endStates) + ":\n");
+            for (Record record : getRecords(states, endStates)) {
+                writer.write(describe(record, operation, inputs) + "\n");
+            }
+            writer.write("\n");
+        }
+    }
+
+    // Describes a result the way Automaton.toString prints it, named after the operation that produced it
+    static String describe(Record record, OperationType operation, List<Automaton> inputs) {
+        return describe(record.result, operation, inputName(inputs, record.first),
+                record.second < 0 ? null : inputName(inputs, record.second));
+    }
+
+    // The same for operands given by their definitions (second is null for unary operations)
+    static String describe(LassoForm result, OperationType operation, String first, String second) {
+        String name;
+        switch (operation) {
+            case SQUARE:
+                name = first + "^2";
+                break;
+            case CONCATENATION:
+                name = first + "+" + second;
+                break;
+            // The names AutomatonOperations gives the boolean operations' results
+            case INTERSECTION:
+                name = first + "&" + second;
+                break;
+            case UNION:
+                name = first + "|" + second;
+                break;
+            case DIFFERENCE:
+                name = first + "-" + second;
+                break;
+            case COMPLEMENT:
+                name = "!" + first;
+                break;
+            default:
+                name = first;
+                break;
+        }
+        return result.toAutomaton(name + "_DFA_minimized").toString();
+    }
+
+    // The definition of an input automaton, or "#id" when the inputs are not available
+    private static String inputName(List<Automaton> inputs, int id) {
+        return inputs != null && id < inputs.size() ? inputs.get(id).getCurrentAutomata() : "#" + id;
+    }
+}
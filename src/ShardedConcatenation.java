@@ -0,0 +1,249 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// All-pairs concatenation of one dataset split into N shards that can run on different machines.
+// Shard k of N takes the rows k*n/N .. (k+1)*n/N-1 of the n x n pair matrix, so the split only
+// depends on the dataset and N. While it runs, a shard regularly saves its partial histogram
+// together with the next row to process to its shard file; started again with the same arguments it
+// resumes from there. The merge tool adds up the histograms of all N finished shard files and writes
+// the same summary as the interactive concatenation.
+//
+// Usage: java -cp target/classes:lib/automaton-1.12-4.jar Main --shard k/N [--checkpoint-seconds S] [--workers W] DATASET
+//        java -cp target/classes:lib/automaton-1.12-4.jar Main --merge-shards OUTPUT SHARD_FILE ...
+class ShardedConcatenation {
+
+    private static final String SHARD_USAGE =
+            "Usage: --shard k/N [--checkpoint-seconds S] [--workers W] DATASET (0 <= k < N)";
+
+    private static final long DEFAULT_CHECKPOINT_SECONDS = 300;
+    // Pairs handed to the workers at once; checkpoints are only taken between chunks
+    private static final long CHUNK_PAIRS = 1 << 18;
+
+    private static final String SUMMARY_HEADER = "Summary of Results for concatenation on unary DFAs:";
+
+    private ShardedConcatenation() {
+    }
+
+    // Parses the arguments following --shard and runs (or resumes) the shard
+    public static void run(String[] args) throws IOException {
+        int shard = -1;
+        int shardCount = -1;
+        long checkpointSeconds = DEFAULT_CHECKPOINT_SECONDS;
+        int workers = ParallelPairs.defaultParallelism();
+        String dataset = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 == args.length) {
+                // Every option takes a value
+                System.out.println(SHARD_USAGE);
+                return;
+            }
+            switch (args[i]) {
+                case "--checkpoint-seconds":
+                    checkpointSeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    if (shard < 0) {
+                        String[] parts = args[i].split("/");
+                        if (parts.length != 2) {
+                            System.out.println(SHARD_USAGE);
+                            return;
+                        }
+                        shard = Integer.parseInt(parts[0]);
+                        shardCount = Integer.parseInt(parts[1]);
+                    } else {
+                        dataset = args[i];
+                    }
+                    break;
+            }
+        }
+        if (dataset == null || shardCount <= 0 || shard >= shardCount) {
+            System.out.println(SHARD_USAGE);
+            return;
+        }
+        runShard(dataset, shard, shardCount, checkpointSeconds, workers);
+    }
+
+    // Runs one shard, resuming from its shard file if an earlier run left one
+    public static void runShard(String dataset, int shard, int shardCount, long checkpointSeconds, int workers)
+            throws IOException {
+        List<Automaton> automata = new AutomatonLoader().loadAutomataFromFile(dataset);
+        int n = automata.size();
+        int firstRow = (int) ((long) shard * n / shardCount);
+        int endRow = (int) ((long) (shard + 1) * n / shardCount);
+        String shardFile = shardFile(dataset, shard, shardCount);
+
+        Checkpoint checkpoint = new Checkpoint(shard, shardCount, n, firstRow, new ComplexityHistogram());
+        if (Files.exists(Paths.get(shardFile))) {
+            checkpoint = Checkpoint.read(shardFile);
+            if (checkpoint.shard != shard || checkpoint.shardCount != shardCount || checkpoint.datasetSize != n) {
+                throw new IOException(shardFile + " belongs to shard " + checkpoint.shard + "/" + checkpoint.shardCount
+                        + " of a dataset with " + checkpoint.datasetSize + " automata");
+            }
+            System.out.println("Resuming shard " + shard + "/" + shardCount + " at row " + checkpoint.nextRow);
+        }
+
+        int rowsPerChunk = (int) Math.max(1, CHUNK_PAIRS / Math.max(1, n));
+        ProgressReporter progress = new ProgressReporter("shard " + shard + "/" + shardCount,
+                (long) (endRow - checkpoint.nextRow) * n);
+        // The canonical forms and the workers serve every chunk of the shard
+        LassoForm[] forms = ParallelPairs.forms(automata);
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            long nextCheckpoint = System.nanoTime() + checkpointSeconds * 1_000_000_000L;
+            while (checkpoint.nextRow < endRow) {
+                int chunkEnd = Math.min(endRow, checkpoint.nextRow + rowsPerChunk);
+                ComplexityHistogram chunk = ParallelPairs.run(OperationType.CONCATENATION,
+                        Arrays.copyOfRange(forms, checkpoint.nextRow, chunkEnd), forms, pool, progress);
+                checkpoint.histogram.merge(chunk);
+                checkpoint.nextRow = chunkEnd;
+                if (System.nanoTime() >= nextCheckpoint && checkpoint.nextRow < endRow) {
+                    checkpoint.write(shardFile, endRow);
+                    nextCheckpoint = System.nanoTime() + checkpointSeconds * 1_000_000_000L;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        progress.finish();
+        checkpoint.write(shardFile, endRow);
+        System.out.println("Shard " + shard + "/" + shardCount + " complete: " + checkpoint.histogram.getTotal()
+                + " pairs saved to " + shardFile);
+    }
+
+    // Parses the arguments following --merge-shards: the output file and the shard files
+    public static void merge(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: --merge-shards OUTPUT SHARD_FILE ...");
+            return;
+        }
+        mergeShardFiles(List.of(args).subList(1, args.length), args[0]);
+    }
+
+    // Adds up the histograms of the complete set of finished shard files and writes the summary
+    public static void mergeShardFiles(List<String> shardFiles, String outputFile) throws IOException {
+        ComplexityHistogram merged = new ComplexityHistogram();
+        boolean[] seen = null;
+        int datasetSize = -1;
+        for (String shardFile : shardFiles) {
+            Checkpoint checkpoint = Checkpoint.read(shardFile);
+            if (seen == null) {
+                seen = new boolean[checkpoint.shardCount];
+                datasetSize = checkpoint.datasetSize;
+            }
+            if (checkpoint.shardCount != seen.length || checkpoint.datasetSize != datasetSize) {
+                throw new IOException(shardFile + " belongs to a different run");
+            }
+            if (!checkpoint.complete) {
+                throw new IOException(shardFile + " is not finished (next row " + checkpoint.nextRow + ")");
+            }
+            if (seen[checkpoint.shard]) {
+                throw new IOException("Shard " + checkpoint.shard + " is given twice");
+            }
+            seen[checkpoint.shard] = true;
+            merged.merge(checkpoint.histogram);
+        }
+        for (int shard = 0; shard < seen.length; shard++) {
+            if (!seen[shard]) {
+                throw new IOException("Shard " + shard + "/" + seen.length + " is missing");
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile))) {
+            writer.write(SUMMARY_HEADER + "\n");
+            merged.writeSummary(writer);
+        }
+        System.out.println("Merged " + seen.length + " shards (" + merged.getTotal() + " pairs) into " + outputFile);
+    }
+
+    // Shard file of a dataset, e.g. "unarydfa13_concatenate.shard-2-of-8.txt"
+    static String shardFile(String dataset, int shard, int shardCount) {
+        return Main.resultPath(dataset, "_concatenate.shard-" + shard + "-of-" + shardCount);
+    }
+
+    // The saved state of a shard: a few "key: value" lines followed by the summary of the histogram so far
+    private static final class Checkpoint {
+        final int shard;
+        final int shardCount;
+        final int datasetSize;
+        final ComplexityHistogram histogram;
+        int nextRow;
+        boolean complete;
+
+        Checkpoint(int shard, int shardCount, int datasetSize, int nextRow, ComplexityHistogram histogram) {
+            this.shard = shard;
+            this.shardCount = shardCount;
+            this.datasetSize = datasetSize;
+            this.nextRow = nextRow;
+            this.histogram = histogram;
+        }
+
+        // Writes the checkpoint to a temporary file first and then renames it, so that a crash while
+        // writing leaves the previous checkpoint intact
+        void write(String shardFile, int endRow) throws IOException {
+            long start = Instrumentation.start();
+            complete = nextRow >= endRow;
+            Path target = Paths.get(shardFile);
+            Path temporary = Paths.get(shardFile + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary)) {
+                writer.write("shard: " + shard + "/" + shardCount + "\n");
+                writer.write("dataset-size: " + datasetSize + "\n");
+                writer.write("next-row: " + nextRow + "\n");
+                writer.write("complete: " + complete + "\n");
+                writer.write(SUMMARY_HEADER + "\n");
+                histogram.writeSummary(writer);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Instrumentation.end(Instrumentation.Phase.WRITE, start);
+        }
+
+        static Checkpoint read(String shardFile) throws IOException {
+            try (BufferedReader reader = new BufferedReader(new FileReader(shardFile))) {
+                String[] shardOfCount = value(reader, "shard").split("/");
+                int shard = Integer.parseInt(shardOfCount[0]);
+                int shardCount = Integer.parseInt(shardOfCount[1]);
+                if (shard < 0 || shard >= shardCount) {
+                    throw new IOException("Shard " + shard + "/" + shardCount + " out of range in " + shardFile);
+                }
+                int datasetSize = Integer.parseInt(value(reader, "dataset-size"));
+                int nextRow = Integer.parseInt(value(reader, "next-row"));
+                boolean complete = Boolean.parseBoolean(value(reader, "complete"));
+                if (!SUMMARY_HEADER.equals(reader.readLine())) {
+                    throw new IOException("Missing summary in " + shardFile);
+                }
+                ComplexityHistogram histogram = new ComplexityHistogram();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!histogram.addSummaryLine(line)) {
+                        throw new IOException("Malformed summary line in " + shardFile + ": " + line);
+                    }
+                }
+                Checkpoint checkpoint = new Checkpoint(shard, shardCount, datasetSize, nextRow, histogram);
+                checkpoint.complete = complete;
+                return checkpoint;
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Malformed shard file " + shardFile + ": " + e.getMessage(), e);
+            }
+        }
+
+        private static String value(BufferedReader reader, String key) throws IOException {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(key + ": ")) {
+                throw new IOException("Expected \"" + key + ": \" but found: " + line);
+            }
+            return line.substring(key.length() + 2).trim();
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+// Computes the minimal result of square and concatenation arithmetically from the operands' canonical
+// tail/cycle forms, without building any automaton. With A = (t1, c1) and B = (t2, c2), the language
+// of A.B is the sum set {i + j : a^i in A, a^j in B}, which is periodic with period L = lcm(c1, c2)
+// from position t1 + t2 + L on; its membership bits up to that point plus one period are
+//   OR over accepting tail positions i of A:  B shifted by i
+//   OR over accepting cycle positions i of A: (B OR B shifted by c1, 2*c1, ...) shifted by i
+// which takes a handful of word operations per accepting state of A. The lasso given by these bits is
+// then reduced to its canonical form. concatenateKey does the same in a per-thread Workspace without
+// allocating, for loops that only need the (states, endStates) key. Plus has no such short formula
+// and is computed by the fused subset walk on the operand's minimal DFA.
+//
+// Intersection, union and difference are periodic with period lcm(c1, c2) from position max(t1, t2)
+// on, so their bits up to one period past that point are the operands' membership bits combined word
+// by word with AND, OR and AND NOT; the complement flips the operand's bits on its own tail and cycle.
+//
+// Powers: with m the length of the shortest word of A, A = a^m A' where A' contains the empty word, so
+// A' is contained in A'^2, A'^2 in A'^3 and so on. Once A'^(j+1) = A'^j the chain has stopped changing
+// and A^k = a^(k*m) A'^j for every k >= j, which is a plain shift of the bits.
+class UnaryComplexityEngine {
+
+    // The power checked by verify
+    private static final int VERIFIED_POWER = 3;
+
+    // The canonical form of {a^0}, the 0-th power of every language
+    private static final LassoForm EMPTY_WORD = new LassoForm(1, 1, BitSet.valueOf(new long[] { 1L }));
+
+    private UnaryComplexityEngine() {
+    }
+
+    // Returns the canonical minimal DFA of the operation applied to operands given by their canonical
+    // forms (second is ignored by unary operations)
+    public static LassoForm apply(OperationType operation, LassoForm first, LassoForm second) {
+        switch (operation) {
+            case SQUARE:
+                return concatenate(first, first);
+            case PLUS:
+                // Named explicitly: the operand may be larger than the text format can encode
+                return ResultCache.compute(OperationType.PLUS, first.toAutomaton("plus-operand"), null);
+            case CONCATENATION:
+                return concatenate(first, second);
+            case INTERSECTION:
+            case UNION:
+            case DIFFERENCE:
+            case COMPLEMENT:
+                return combine(operation, first, second);
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    // Returns the (states, endStates) key of the minimal result, packed by ComplexityHistogram.packKey;
+    // allocation-free for every operation but plus
+    public static long key(OperationType operation, LassoForm first, LassoForm second, Workspace workspace) {
+        switch (operation) {
+            case SQUARE:
+                return concatenateKey(first, first, workspace);
+            case CONCATENATION:
+                return concatenateKey(first, second, workspace);
+            case INTERSECTION:
+            case UNION:
+            case DIFFERENCE:
+            case COMPLEMENT:
+                return combineKey(operation, first, second, workspace);
+            default:
+                LassoForm result = apply(operation, first, second);
+                return ComplexityHistogram.packKey(result.getTotalStates(), result.getEndStateCount());
+        }
+    }
+
+    // Returns the canonical minimal DFA of the concatenation of the two languages
+    public static LassoForm concatenate(LassoForm first, LassoForm second) {
+        int period = lcm(first.getCycleLength(), second.getCycleLength());
+        int tail = first.getTailLength() + second.getTailLength() + period;
+        int words = (tail + period + 63) >>> 6;
+        long[] result = sumSet(first, second, Workspace.current());
+        return UnaryMinimizer.reduce(tail, period, BitSet.valueOf(Arrays.copyOf(result, words)));
+    }
+
+    // Returns the (states, endStates) key of the minimal DFA of the concatenation, packed by
+    // ComplexityHistogram.packKey; works in the given workspace and allocates nothing once its buffers
+    // are large enough
+    public static long concatenateKey(LassoForm first, LassoForm second, Workspace workspace) {
+        int period = lcm(first.getCycleLength(), second.getCycleLength());
+        int tail = first.getTailLength() + second.getTailLength() + period;
+        int words = (tail + period + 63) >>> 6;
+        long[] result = sumSet(first, second, workspace);
+        return UnaryMinimizer.reduceKey(tail, period, result, words, workspace);
+    }
+
+    // Fills the workspace's result buffer with the membership bits of the concatenation up to the end of
+    // its first period after the tail bound, and returns it
+    private static long[] sumSet(LassoForm first, LassoForm second, Workspace workspace) {
+        int firstTail = first.getTailLength();
+        int firstCycle = first.getCycleLength();
+        int period = lcm(firstCycle, second.getCycleLength());
+        int length = firstTail + second.getTailLength() + 2 * period;
+        int words = (length + 63) >>> 6;
+
+        long[] shifted = membership(second, length, workspace.words(Workspace.SECOND_OPERAND, words));
+        // B together with all its shifts by multiples of A's cycle length, by doubling the shift
+        long[] repeated = workspace.words(Workspace.REPEATED, words);
+        System.arraycopy(shifted, 0, repeated, 0, words);
+        for (int shift = firstCycle; shift < length; shift *= 2) {
+            orShifted(repeated, repeated, shift, words);
+        }
+
+        long[] result = workspace.words(Workspace.RESULT, words);
+        for (int i = 0; i < firstTail + firstCycle; i++) {
+            if (first.isAccepting(i)) {
+                orShifted(result, i < firstTail ? shifted : repeated, i, words);
+            }
+        }
+        if ((length & 63) != 0) {
+            result[words - 1] &= (1L << length) - 1;
+        }
+        return result;
+    }
+
+    // Returns the canonical minimal DFA of a boolean operation on the two languages (second is ignored
+    // by the complement)
+    public static LassoForm combine(OperationType operation, LassoForm first, LassoForm second) {
+        int tail = productTail(operation, first, second);
+        int period = productPeriod(operation, first, second);
+        int words = (tail + period + 63) >>> 6;
+        long[] result = booleanBits(operation, first, second, tail + period, Workspace.current());
+        return UnaryMinimizer.reduce(tail, period, BitSet.valueOf(Arrays.copyOf(result, words)));
+    }
+
+    // combine reduced to its packed (states, endStates) key, in the given workspace
+    public static long combineKey(OperationType operation, LassoForm first, LassoForm second, Workspace workspace) {
+        int tail = productTail(operation, first, second);
+        int period = productPeriod(operation, first, second);
+        int words = (tail + period + 63) >>> 6;
+        long[] result = booleanBits(operation, first, second, tail + period, workspace);
+        return UnaryMinimizer.reduceKey(tail, period, result, words, workspace);
+    }
+
+    // Builds the product DFA of a boolean operation before minimization: a lasso with a tail of
+    // max(t1, t2) states and a cycle of lcm(c1, c2) states
+    public static Automaton product(OperationType operation, LassoForm first, LassoForm second, String currentAutomata) {
+        int tail = productTail(operation, first, second);
+        int totalStates = tail + productPeriod(operation, first, second);
+        long[] result = booleanBits(operation, first, second, totalStates, Workspace.current());
+        int[] successors = new int[totalStates];
+        for (int state = 0; state < totalStates; state++) {
+            successors[state] = state + 1 < totalStates ? state + 1 : tail;
+        }
+        BitSet endStates = BitSet.valueOf(Arrays.copyOf(result, (totalStates + 63) >>> 6));
+        return new Automaton(successors, endStates, currentAutomata);
+    }
+
+    private static int productTail(OperationType operation, LassoForm first, LassoForm second) {
+        if (operation == OperationType.COMPLEMENT) {
+            return first.getTailLength();
+        }
+        return Math.max(first.getTailLength(), second.getTailLength());
+    }
+
+    private static int productPeriod(OperationType operation, LassoForm first, LassoForm second) {
+        if (operation == OperationType.COMPLEMENT) {
+            return first.getCycleLength();
+        }
+        return lcm(first.getCycleLength(), second.getCycleLength());
+    }
+
+    // Fills the workspace's result buffer with the membership bits 0..length-1 of a boolean operation
+    // on the two languages and returns it
+    private static long[] booleanBits(OperationType operation, LassoForm first, LassoForm second, int length,
+            Workspace workspace) {
+        int words = (length + 63) >>> 6;
+        long[] result = membership(first, length, workspace.words(Workspace.RESULT, words));
+        if (operation == OperationType.COMPLEMENT) {
+            for (int i = 0; i < words; i++) {
+                result[i] = ~result[i];
+            }
+        } else {
+            long[] other = membership(second, length, workspace.words(Workspace.SECOND_OPERAND, words));
+            switch (operation) {
+                case INTERSECTION:
+                    for (int i = 0; i < words; i++) {
+                        result[i] &= other[i];
+                    }
+                    break;
+                case UNION:
+                    for (int i = 0; i < words; i++) {
+                        result[i] |= other[i];
+                    }
+                    break;
+                case DIFFERENCE:
+                    for (int i = 0; i < words; i++) {
+                        result[i] &= ~other[i];
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Not a boolean operation: " + operation);
+            }
+        }
+        if ((length & 63) != 0) {
+            result[words - 1] &= (1L << length) - 1;
+        }
+        return result;
+    }
+
+    // Returns the canonical minimal DFA of the k-th power A.A...A (k factors) of the language, by repeated
+    // squaring of A', stopping as soon as a square equals the previous one
+    public static LassoForm power(LassoForm form, int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Negative power: " + k);
+        }
+        if (k == 0) {
+            return EMPTY_WORD;
+        }
+        int shortest = shortestWord(form);
+        if (shortest < 0) {
+            return form;
+        }
+        int shift = Math.multiplyExact(k, shortest);
+        LassoForm square = shift(form, -shortest);
+        LassoForm result = null;
+        for (int remaining = k; ; remaining >>>= 1) {
+            if ((remaining & 1) != 0) {
+                result = result == null ? square : concatenate(result, square);
+            }
+            if (remaining == 1) {
+                return shift(result, shift);
+            }
+            LassoForm next = concatenate(square, square);
+            if (next.equals(square)) {
+                // square is A'^j with j < k, and every later power of A' equals it
+                return shift(square, shift);
+            }
+            square = next;
+        }
+    }
+
+    // Fills keys[k] with the packed (states, endStates) key of the k-th power's minimal DFA for every k
+    // below keys.length. Each power of A' is built from the previous one until the chain stops changing;
+    // after that only the shift is recomputed. Returns the number of concatenations performed.
+    public static int powerKeys(LassoForm form, long[] keys, Workspace workspace) {
+        if (keys.length == 0) {
+            return 0;
+        }
+        keys[0] = ComplexityHistogram.packKey(EMPTY_WORD.getTotalStates(), EMPTY_WORD.getEndStateCount());
+        int shortest = shortestWord(form);
+        if (shortest < 0) {
+            Arrays.fill(keys, 1, keys.length, ComplexityHistogram.packKey(form.getTotalStates(), 0));
+            return 0;
+        }
+        LassoForm reduced = shift(form, -shortest);
+        LassoForm current = reduced;
+        boolean stable = false;
+        int concatenations = 0;
+        for (int k = 1; k < keys.length; k++) {
+            if (k > 1 && !stable) {
+                LassoForm next = concatenate(current, reduced);
+                concatenations++;
+                stable = next.equals(current);
+                current = next;
+            }
+            keys[k] = shiftKey(current, Math.multiplyExact(k, shortest), workspace);
+        }
+        return concatenations;
+    }
+
+    // Returns the length of the shortest accepted word, or -1 for the empty language
+    private static int shortestWord(LassoForm form) {
+        for (int state = 0; state < form.getTotalStates(); state++) {
+            if (form.isAccepting(state)) {
+                return state;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the canonical form of {a^(x + shift) : a^x in L}; a negative shift drops the words shorter
+    // than -shift
+    private static LassoForm shift(LassoForm form, int shift) {
+        int tail = Math.max(0, form.getTailLength() + shift);
+        int length = tail + form.getCycleLength();
+        int words = (length + 63) >>> 6;
+        long[] bits = shiftedBits(form, shift, length, new long[words]);
+        return UnaryMinimizer.reduce(tail, form.getCycleLength(), BitSet.valueOf(bits));
+    }
+
+    // shift reduced to its packed (states, endStates) key, in the given workspace
+    private static long shiftKey(LassoForm form, int shift, Workspace workspace) {
+        int tail = Math.max(0, form.getTailLength() + shift);
+        int length = tail + form.getCycleLength();
+        int words = (length + 63) >>> 6;
+        long[] bits = shiftedBits(form, shift, length, workspace.words(Workspace.RESULT, words));
+        return UnaryMinimizer.reduceKey(tail, form.getCycleLength(), bits, words, workspace);
+    }
+
+    // Sets bits 0..length-1 of the cleared buffer to whether the form accepts a^(x - shift)
+    private static long[] shiftedBits(LassoForm form, int shift, int length, long[] bits) {
+        for (int x = Math.max(0, shift); x < length; x++) {
+            if (form.accepts(x - shift)) {
+                bits[x >>> 6] |= 1L << x;
+            }
+        }
+        return bits;
+    }
+
+    // Compares the engine with the automaton pipeline (operation NFA, convertToDFA, minimization) on
+    // square, plus and the cube of every automaton and on the concatenation of samplePairs random pairs,
+    // and checks the boolean operations on the same pairs by membership; returns the number of
+    // mismatches, each of which is printed
+    public static int verify(List<Automaton> automata, int samplePairs, long seed) {
+        int mismatches = 0;
+        int checked = 0;
+        for (Automaton automaton : automata) {
+            for (OperationType operation : new OperationType[] { OperationType.SQUARE, OperationType.PLUS }) {
+                mismatches += verifyOne(operation, automaton, null);
+                checked++;
+            }
+            mismatches += verifyPower(automaton, VERIFIED_POWER);
+            checked++;
+        }
+        Random random = new Random(seed);
+        for (int pair = 0; pair < samplePairs && !automata.isEmpty(); pair++) {
+            Automaton first = automata.get(random.nextInt(automata.size()));
+            Automaton second = automata.get(random.nextInt(automata.size()));
+            mismatches += verifyOne(OperationType.CONCATENATION, first, second);
+            checked++;
+            for (OperationType operation : new OperationType[] { OperationType.INTERSECTION, OperationType.UNION,
+                    OperationType.DIFFERENCE, OperationType.COMPLEMENT }) {
+                mismatches += verifyBoolean(operation, first, second);
+                checked++;
+            }
+        }
+        System.out.println("Verified " + checked + " results against the automaton pipeline: " + mismatches
+                + " mismatches");
+        return mismatches;
+    }
+
+    private static int verifyOne(OperationType operation, Automaton first, Automaton second) {
+        LassoForm expected = UnaryMinimizer.minimize(AutomatonOperations.convertToDFA(operation.apply(first, second)));
+        LassoForm actual = apply(operation, UnaryMinimizer.minimize(first),
+                second == null ? null : UnaryMinimizer.minimize(second));
+        if (expected.equals(actual)) {
+            return 0;
+        }
+        System.out.println("Mismatch for " + operation.getName() + " of " + first.getCurrentAutomata()
+                + (second == null ? "" : " and " + second.getCurrentAutomata()) + ": expected " + expected
+                + ", engine gave " + actual);
+        return 1;
+    }
+
+    // A^k by chained concatenation through the automaton pipeline, against power and powerKeys
+    private static int verifyPower(Automaton automaton, int k) {
+        Automaton chained = automaton;
+        for (int i = 1; i < k; i++) {
+            chained = AutomatonOperations.minimizeDFA(
+                    AutomatonOperations.convertToDFA(AutomatonOperations.concatenate(chained, automaton)));
+        }
+        LassoForm expected = UnaryMinimizer.minimize(chained);
+        LassoForm form = UnaryMinimizer.minimize(automaton);
+        LassoForm actual = power(form, k);
+        long[] keys = new long[k + 1];
+        powerKeys(form, keys, Workspace.current());
+        if (expected.equals(actual)
+                && keys[k] == ComplexityHistogram.packKey(expected.getTotalStates(), expected.getEndStateCount())) {
+            return 0;
+        }
+        System.out.println("Mismatch for power " + k + " of " + automaton.getCurrentAutomata() + ": expected "
+                + expected + ", engine gave " + actual);
+        return 1;
+    }
+
+    // The boolean operations are checked word length by word length against the operands' own DFAs,
+    // stepped transition by transition from the start state so that the expectation does not go through
+    // the lasso forms the engine itself works on, up to one period past the product's tail, which decides
+    // equality of the two languages; the result must also be minimal, i.e. equal to its own reduction
+    private static int verifyBoolean(OperationType operation, Automaton first, Automaton second) {
+        LassoForm firstForm = UnaryMinimizer.minimize(first);
+        LassoForm secondForm = UnaryMinimizer.minimize(second);
+        LassoForm actual = apply(operation, firstForm, secondForm);
+        int length = productTail(operation, firstForm, secondForm) + productPeriod(operation, firstForm, secondForm);
+        boolean matches = actual.equals(UnaryMinimizer.minimize(actual.toAutomaton(null)));
+        int firstState = 0;
+        int secondState = 0;
+        for (int x = 0; x < length && matches; x++) {
+            // A missing transition leads to a rejecting sink, which NO_STATE stands for
+            boolean inFirst = first.isEndState(firstState);
+            boolean inSecond = second.isEndState(secondState);
+            firstState = firstState == Automaton.NO_STATE ? Automaton.NO_STATE : first.getSuccessor(firstState);
+            secondState = secondState == Automaton.NO_STATE ? Automaton.NO_STATE : second.getSuccessor(secondState);
+            boolean expected;
+            switch (operation) {
+                case INTERSECTION:
+                    expected = inFirst && inSecond;
+                    break;
+                case UNION:
+                    expected = inFirst || inSecond;
+                    break;
+                case DIFFERENCE:
+                    expected = inFirst && !inSecond;
+                    break;
+                default:
+                    expected = !inFirst;
+                    break;
+            }
+            matches = actual.accepts(x) == expected;
+        }
+        if (matches) {
+            return 0;
+        }
+        System.out.println("Mismatch for " + operation.getName() + " of " + first.getCurrentAutomata()
+                + (operation.isBinary() ? " and " + second.getCurrentAutomata() : "") + ": engine gave " + actual);
+        return 1;
+    }
+
+    // Sets bits 0..length-1 of the cleared buffer to whether the form accepts a^x
+    private static long[] membership(LassoForm form, int length, long[] bits) {
+        int tail = form.getTailLength();
+        int cycle = form.getCycleLength();
+        for (int x = 0; x < length; x++) {
+            int state = x < tail ? x : tail + (x - tail) % cycle;
+            if (form.isAccepting(state)) {
+                bits[x >>> 6] |= 1L << x;
+            }
+        }
+        return bits;
+    }
+
+    // target |= source shifted towards higher positions by shift bits, on the first words of both;
+    // target and source may be the same array, since words are processed from the highest down
+    private static void orShifted(long[] target, long[] source, int shift, int words) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = words - 1; i >= wordShift; i--) {
+            long word = source[i - wordShift] << bitShift;
+            if (bitShift != 0 && i - wordShift - 1 >= 0) {
+                word |= source[i - wordShift - 1] >>> (64 - bitShift);
+            }
+            target[i] |= word;
+        }
+    }
+
+    private static int lcm(int a, int b) {
+        return a / gcd(a, b) * b;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,137 @@
+import java.util.BitSet;
+
+// Determinizes unary NFAs. Over a one-letter alphabet the subset construction follows a single
+// path of subsets that eventually enters a cycle (a lasso), so instead of storing every subset
+// we locate the tail and the cycle with Brent's cycle detection and then emit the path once.
+// Apart from the resulting DFA only a handful of bitsets are kept alive.
+class UnaryDeterminizer {
+
+    private UnaryDeterminizer() {
+    }
+
+    // Converts a unary NFA into the DFA that the subset construction would build:
+    // state i is the i-th subset on the path from the start closure, the last state loops back
+    public static Automaton determinize(Automaton nfa) {
+        Cursor tortoise = new Cursor(nfa);
+        long lasso = findLasso(nfa, tortoise);
+        int tailLength = (int) (lasso >>> 32);
+        int cycleLength = (int) lasso;
+
+        // Emit the lasso: walk the path once more to record which subsets are accepting
+        int totalStates = tailLength + cycleLength;
+        int[] successors = new int[totalStates];
+        for (int state = 0; state < totalStates; state++) {
+            successors[state] = state + 1 < totalStates ? state + 1 : tailLength;
+        }
+        BitSet endStates = acceptingSubsets(nfa, tortoise, totalStates);
+        return new Automaton(successors, endStates, nfa.getCurrentAutomata() + "_DFA");
+    }
+
+    // Computes the canonical minimal form of the NFA's language from the subset path, without building
+    // the DFA
+    public static LassoForm language(Automaton nfa) {
+        Cursor tortoise = new Cursor(nfa);
+        long lasso = findLasso(nfa, tortoise);
+        int tailLength = (int) (lasso >>> 32);
+        int cycleLength = (int) lasso;
+        BitSet accepting = acceptingSubsets(nfa, tortoise, tailLength + cycleLength);
+        return UnaryMinimizer.reduce(tailLength, cycleLength, accepting);
+    }
+
+    // Locates tail and cycle of the subset path and returns tailLength << 32 | cycleLength
+    private static long findLasso(Automaton nfa, Cursor tortoise) {
+        Cursor hare = new Cursor(nfa);
+
+        // Brent's algorithm: find the cycle length by letting the tortoise teleport to the hare
+        // at every power of two
+        hare.advance();
+        int power = 1;
+        int cycleLength = 1;
+        while (!tortoise.isAt(hare)) {
+            if (power == cycleLength) {
+                tortoise.moveTo(hare);
+                power *= 2;
+                cycleLength = 0;
+            }
+            hare.advance();
+            cycleLength++;
+        }
+
+        // Find the tail length: start the hare cycleLength steps ahead and advance both until they meet
+        tortoise.restart();
+        hare.restart();
+        for (int i = 0; i < cycleLength; i++) {
+            hare.advance();
+        }
+        int tailLength = 0;
+        while (!tortoise.isAt(hare)) {
+            tortoise.advance();
+            hare.advance();
+            tailLength++;
+        }
+
+        Instrumentation.countSubsets(tortoise.steps + hare.steps);
+        return (long) tailLength << 32 | cycleLength;
+    }
+
+    // Walks the first totalStates subsets of the path and returns the positions of the accepting ones
+    private static BitSet acceptingSubsets(Automaton nfa, Cursor cursor, int totalStates) {
+        BitSet accepting = new BitSet(totalStates);
+        cursor.restart();
+        for (int state = 0; state < totalStates; state++) {
+            if (nfa.containsEndState(cursor.current)) {
+                accepting.set(state);
+            }
+            cursor.advance();
+        }
+        Instrumentation.countSubsets(totalStates);
+        return accepting;
+    }
+
+    // Computes the epsilon closure of the successors of every state in the given subset into target
+    static void step(Automaton nfa, BitSet subset, BitSet target) {
+        target.clear();
+        for (int state = subset.nextSetBit(0); state >= 0; state = subset.nextSetBit(state + 1)) {
+            for (int k = 0; k < nfa.getSuccessorCount(state); k++) {
+                nfa.addEpsilonClosure(nfa.getSuccessor(state, k), target);
+            }
+        }
+    }
+
+    // A position on the subset path, double-buffered so that advancing never allocates
+    private static final class Cursor {
+        private final Automaton nfa;
+        private BitSet current = new BitSet();
+        private BitSet spare = new BitSet();
+        // Number of subsets computed by this cursor
+        private long steps;
+
+        Cursor(Automaton nfa) {
+            this.nfa = nfa;
+            restart();
+        }
+
+        // Goes back to the epsilon closure of the start state
+        void restart() {
+            current.clear();
+            nfa.addEpsilonClosure(0, current);
+        }
+
+        void advance() {
+            step(nfa, current, spare);
+            steps++;
+            BitSet previous = current;
+            current = spare;
+            spare = previous;
+        }
+
+        void moveTo(Cursor other) {
+            current.clear();
+            current.or(other.current);
+        }
+
+        boolean isAt(Cursor other) {
+            return current.equals(other.current);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Enumerates the unary DFAs with a given number of states in process, instead of reading a dataset file.
+// Every DFA is identified by its accepting mask (bit i set when state i is accepting) and its
+// transitions, and the DFAs are ordered by mask first, then by their definition string. Three families:
+//   ALL:     every complete DFA with start state 0, n^n * 2^n of them
+//   LASSO:   one DFA per isomorphism class of DFAs with all states reachable: the states are numbered
+//            along the path from the start state and the last one loops back to some state l
+//   MINIMAL: the lassos that are minimal, i.e. the cycle's accepting pattern is primitive and the last
+//            tail state differs from the last cycle state; for n <= 14 this is exactly unarydfaN.txt
+// optionally restricted to DFAs with a given number of end states.
+// rank and unrank map between DFAs and their positions in this order by counting, without enumerating
+// the DFAs before them, so a shard can start right at its own slice; automata(from, to) then walks the
+// slice. Datasets named by a spec like "gen-minimal-20" or "gen-lasso-10-e3" (family, states and
+// optionally end states) are generated by AutomatonLoader instead of being read.
+class UnaryDfaGenerator {
+
+    enum Family {
+        ALL("all"), LASSO("lasso"), MINIMAL("minimal");
+
+        private final String name;
+
+        Family(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    // Any number of end states
+    public static final int ANY = -1;
+
+    // Largest state counts whose ranks fit into a long
+    private static final int MAX_STATES = 57;
+    private static final int MAX_STATES_ALL = 13;
+
+    private static final Pattern SPEC = Pattern.compile("gen-(all|lasso|minimal)-(\\d+)(?:-e(\\d+))?");
+    private static final long[][] BINOMIAL = new long[MAX_STATES + 2][MAX_STATES + 2];
+
+    static {
+        for (int n = 0; n < BINOMIAL.length; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + BINOMIAL[n - 1][k];
+            }
+        }
+    }
+
+    private final int states;
+    private final Family family;
+    private final int endStates;
+    // Automata per accepting mask in the ALL family: n^n
+    private final long transitionCount;
+    private final long size;
+
+    public UnaryDfaGenerator(int states, Family family, int endStates) {
+        int maxStates = family == Family.ALL ? MAX_STATES_ALL : MAX_STATES;
+        if (states < 1 || states > maxStates) {
+            throw new IllegalArgumentException("The " + family.getName() + " family supports 1 to " + maxStates
+                    + " states, not " + states);
+        }
+        if (endStates != ANY && (endStates < 0 || endStates > states)) {
+            throw new IllegalArgumentException("Invalid number of end states: " + endStates);
+        }
+        this.states = states;
+        this.family = family;
+        this.endStates = endStates;
+        long transitions = 1;
+        for (int i = 0; i < states; i++) {
+            transitions *= states;
+        }
+        this.transitionCount = transitions;
+        this.size = countBefore(1L << states);
+    }
+
+    // Checks whether a dataset name is a generator spec such as "gen-minimal-20" or "gen-lasso-10-e3"
+    public static boolean isSpec(String dataset) {
+        return SPEC.matcher(dataset).matches();
+    }
+
+    // Creates the generator a spec names
+    public static UnaryDfaGenerator fromSpec(String spec) {
+        Matcher matcher = SPEC.matcher(spec);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a generator spec: " + spec);
+        }
+        Family family = Family.valueOf(matcher.group(1).toUpperCase());
+        int endStates = matcher.group(3) == null ? ANY : Integer.parseInt(matcher.group(3));
+        return new UnaryDfaGenerator(Integer.parseInt(matcher.group(2)), family, endStates);
+    }
+
+    public int getStates() {
+        return states;
+    }
+
+    public Family getFamily() {
+        return family;
+    }
+
+    // Returns the number of DFAs generated
+    public long size() {
+        return size;
+    }
+
+    // Returns the DFA at the given position
+    public Automaton unrank(long rank) {
+        if (rank < 0 || rank >= size) {
+            throw new IndexOutOfBoundsException("Rank " + rank + " of " + size);
+        }
+        long mask = maskAt(rank);
+        return build(mask, nth(mask, rank - countBefore(mask)));
+    }
+
+    // Returns the position of a DFA of the generated family
+    public long rank(Automaton automaton) {
+        if (automaton.getTotalStates() != states || !automaton.isDeterministic()) {
+            throw new IllegalArgumentException("Not a deterministic DFA with " + states + " states");
+        }
+        long mask = 0;
+        int[] successors = new int[states];
+        for (int state = 0; state < states; state++) {
+            if (automaton.isEndState(state)) {
+                mask |= 1L << state;
+            }
+            successors[state] = automaton.getSuccessor(state);
+            if (successors[state] < 0 || successors[state] >= states) {
+                throw new IllegalArgumentException("Not a complete DFA: state " + state + " has no successor");
+            }
+        }
+        if (!matchesEndStates(mask)) {
+            throw new IllegalArgumentException("The DFA has " + Long.bitCount(mask) + " end states, not " + endStates);
+        }
+        long position;
+        if (family == Family.ALL) {
+            position = 0;
+            for (int state = 0; state < states; state++) {
+                position = position * states + successors[state];
+            }
+        } else {
+            for (int state = 0; state + 1 < states; state++) {
+                if (successors[state] != state + 1) {
+                    throw new IllegalArgumentException(
+                            "The states are not numbered along the path from the start state");
+                }
+            }
+            int loop = successors[states - 1];
+            if (family == Family.MINIMAL && !isMinimal(mask, loop)) {
+                throw new IllegalArgumentException("The DFA is not minimal");
+            }
+            position = family == Family.LASSO ? loop : countMinimalLoops(mask, loop);
+        }
+        return countBefore(mask) + position;
+    }
+
+    // Returns the DFAs with ranks from (inclusive) to to (exclusive), one at a time
+    public AutomatonSource automata(long from, long to) {
+        if (from < 0 || from > to || to > size) {
+            throw new IndexOutOfBoundsException("Ranks " + from + " to " + to + " of " + size);
+        }
+        return new Slice(from, to);
+    }
+
+    // Returns all generated DFAs
+    public AutomatonSource automata() {
+        return automata(0, size);
+    }
+
+    // Returns the accepting mask of the DFA at the given position: the largest mask with at most rank
+    // DFAs before it
+    private long maskAt(long rank) {
+        long low = 0;
+        long high = (1L << states) - 1;
+        while (low < high) {
+            long middle = low + (high - low + 1) / 2;
+            if (countBefore(middle) <= rank) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    // Number of generated DFAs whose accepting mask is below the given one
+    private long countBefore(long mask) {
+        switch (family) {
+            case ALL:
+                return countBelow(states, mask, endStates, ANY) * transitionCount;
+            case LASSO:
+                return countBelow(states, mask, endStates, ANY) * states;
+            default:
+                return countMinimalBefore(mask);
+        }
+    }
+
+    // Number of minimal lassos whose mask is below the given one. For the lassos looping back to state l
+    // the mask is a cycle word h of c = n - l bits above a tail of l bits; with h below the mask's cycle
+    // part the tail is free apart from its top bit, which has to differ from h's, and with h equal to it
+    // the tail has to stay below the mask's tail part
+    private long countMinimalBefore(long mask) {
+        long count = 0;
+        for (int loop = 0; loop < states; loop++) {
+            int cycle = states - loop;
+            long cycleLimit = mask >>> loop;
+            long tailLimit = mask & ((1L << loop) - 1);
+            if (loop == 0) {
+                count += primitiveBelow(cycle, cycleLimit, endStates, ANY);
+                continue;
+            }
+            for (int top = 0; top <= 1; top++) {
+                if (endStates == ANY) {
+                    count += primitiveBelow(cycle, cycleLimit, ANY, top) << (loop - 1);
+                } else {
+                    for (int ones = 0; ones <= Math.min(cycle, endStates); ones++) {
+                        count += primitiveBelow(cycle, cycleLimit, ones, top)
+                                * binomial(loop - 1, endStates - ones - (1 - top));
+                    }
+                }
+            }
+            if (cycleLimit < 1L << cycle && isPrimitive(cycleLimit, cycle)) {
+                int top = (int) (cycleLimit >>> (cycle - 1) & 1);
+                int tailOnes = endStates == ANY ? ANY : endStates - Long.bitCount(cycleLimit);
+                if (endStates == ANY || tailOnes >= 0) {
+                    count += countBelow(loop, tailLimit, tailOnes, 1 - top);
+                }
+            }
+        }
+        return count;
+    }
+
+    // Number of primitive words of the given length (words that are no power of a shorter word) below the
+    // limit, with the given number of ones and top bit. A word is a power u^(length/d) exactly when it
+    // has period d, and u -> u^(length/d) = u * (2^length - 1) / (2^d - 1) is increasing, so the words
+    // with period d below the limit are counted on u; Moebius inversion over the divisors d leaves the
+    // primitive ones
+    private static long primitiveBelow(int length, long limit, int ones, int top) {
+        limit = Math.min(limit, 1L << length);
+        long count = 0;
+        for (int divisor = 1; divisor <= length; divisor++) {
+            if (length % divisor != 0) {
+                continue;
+            }
+            int repetitions = length / divisor;
+            int moebius = moebius(repetitions);
+            if (moebius == 0 || (ones != ANY && ones % repetitions != 0)) {
+                continue;
+            }
+            long repeatFactor = ((1L << length) - 1) / ((1L << divisor) - 1);
+            long rootLimit = (limit + repeatFactor - 1) / repeatFactor;
+            count += moebius * countBelow(divisor, rootLimit, ones == ANY ? ANY : ones / repetitions, top);
+        }
+        return count;
+    }
+
+    // Number of words x of the given bit length below the limit with the given number of ones and top
+    // bit (bit bits - 1); ANY leaves either unrestricted
+    private static long countBelow(int bits, long limit, int ones, int top) {
+        if (bits == 0) {
+            return limit > 0 && (ones == ANY || ones == 0) ? 1 : 0;
+        }
+        if (limit >= 1L << bits) {
+            if (top == ANY) {
+                return ones == ANY ? 1L << bits : binomial(bits, ones);
+            }
+            return ones == ANY ? 1L << (bits - 1) : binomial(bits - 1, ones - top);
+        }
+        // x agrees with the limit above some set bit p of the limit, is 0 at p and free below p
+        long count = 0;
+        int prefixOnes = 0;
+        for (int p = bits - 1; p >= 0; p--) {
+            if ((limit >>> p & 1) == 0) {
+                continue;
+            }
+            int xTop = p == bits - 1 ? 0 : (int) (limit >>> (bits - 1) & 1);
+            if (top == ANY || top == xTop) {
+                count += ones == ANY ? 1L << p : binomial(p, ones - prefixOnes);
+            }
+            prefixOnes++;
+        }
+        return count;
+    }
+
+    private static long binomial(int n, int k) {
+        return k < 0 || k > n ? 0 : BINOMIAL[n][k];
+    }
+
+    private static int moebius(int n) {
+        int result = 1;
+        for (int p = 2; p * p <= n; p++) {
+            if (n % p == 0) {
+                n /= p;
+                if (n % p == 0) {
+                    return 0;
+                }
+                result = -result;
+            }
+        }
+        return n > 1 ? -result : result;
+    }
+
+    // Checks whether a word of the given length is no power of a shorter word, i.e. equals none of its
+    // rotations by a proper divisor of its length
+    private static boolean isPrimitive(long word, int length) {
+        long all = length == 64 ? -1L : (1L << length) - 1;
+        for (int divisor = 1; divisor < length; divisor++) {
+            if (length % divisor == 0 && (((word >>> divisor) | (word << (length - divisor))) & all) == word) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Checks whether the lasso with the given mask that loops back to state loop is minimal
+    private boolean isMinimal(long mask, int loop) {
+        int cycle = states - loop;
+        long cycleWord = mask >>> loop;
+        return isPrimitive(cycleWord, cycle)
+                && (loop == 0 || (mask >>> (loop - 1) & 1) != (mask >>> (states - 1) & 1));
+    }
+
+    // Number of loop targets below loop that give a minimal lasso with this mask
+    private int countMinimalLoops(long mask, int loop) {
+        int count = 0;
+        for (int l = 0; l < loop; l++) {
+            if (isMinimal(mask, l)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Returns the next mask that can hold generated DFAs: with a fixed number of end states the next larger
+    // mask with as many bits set (Gosper's hack), so that a slice skips the 2^n masks of other counts
+    private long nextMask(long mask) {
+        if (endStates == ANY || mask == 0) {
+            return mask + 1;
+        }
+        long lowest = mask & -mask;
+        long ripple = mask + lowest;
+        return ripple | (((mask ^ ripple) >>> 2) / lowest);
+    }
+
+    private boolean matchesEndStates(long mask) {
+        return endStates == ANY || Long.bitCount(mask) == endStates;
+    }
+
+    // Number of generated DFAs with this mask
+    private long countWithMask(long mask) {
+        if (!matchesEndStates(mask)) {
+            return 0;
+        }
+        switch (family) {
+            case ALL:
+                return transitionCount;
+            case LASSO:
+                return states;
+            default:
+                return countMinimalLoops(mask, states);
+        }
+    }
+
+    // Turns the index of a DFA among those with this mask into its transitions: the transition number
+    // in the ALL family, the loop target otherwise
+    private long nth(long mask, long index) {
+        if (family != Family.MINIMAL) {
+            return index;
+        }
+        for (int loop = 0; loop < states; loop++) {
+            if (isMinimal(mask, loop) && index-- == 0) {
+                return loop;
+            }
+        }
+        throw new IllegalStateException("No minimal lasso at this index");
+    }
+
+    // Builds a DFA from its mask and transitions: the successors as digits of the transition number in
+    // the ALL family (state 0 most significant), a lasso looping back to the given state otherwise
+    private Automaton build(long mask, long transitions) {
+        int[] successors = new int[states];
+        if (family == Family.ALL) {
+            for (int state = states - 1; state >= 0; state--) {
+                successors[state] = (int) (transitions % states);
+                transitions /= states;
+            }
+        } else {
+            for (int state = 0; state < states; state++) {
+                successors[state] = state + 1 < states ? state + 1 : (int) transitions;
+            }
+        }
+        return new Automaton(successors, BitSet.valueOf(new long[] { mask }), null);
+    }
+
+    // Walks a range of ranks mask by mask, unranking only its first DFA
+    private final class Slice implements AutomatonSource {
+        private long remaining;
+        private long mask;
+        private long index;
+        private long countInMask;
+
+        Slice(long from, long to) {
+            this.remaining = to - from;
+            if (remaining > 0) {
+                mask = maskAt(from);
+                index = from - countBefore(mask);
+                countInMask = countWithMask(mask);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Automaton next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            while (index >= countInMask) {
+                mask = nextMask(mask);
+                index = 0;
+                countInMask = countWithMask(mask);
+            }
+            remaining--;
+            return build(mask, nth(mask, index++));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
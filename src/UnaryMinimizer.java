@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Minimizes unary DFAs in linear time. Seen from the start state every unary DFA is a tail followed
+// by a cycle, so the minimal automaton is obtained by reducing the cycle's accepting pattern to its
+// primitive period and then trimming tail states that repeat the end of the cycle.
+// The result is a LassoForm, which is canonical for the accepted language.
+class UnaryMinimizer {
+
+    private UnaryMinimizer() {
+    }
+
+    // Checks whether every state of the DFA lies on the lasso walked from the start state,
+    // in which case the lasso minimization yields the same number of states as partition refinement
+    public static boolean isLasso(Automaton dfa) {
+        if (!dfa.isDeterministic() || dfa.getTotalStates() == 0) {
+            return false;
+        }
+        BitSet visited = new BitSet(dfa.getTotalStates());
+        int state = 0;
+        while (state != Automaton.NO_STATE && !visited.get(state)) {
+            visited.set(state);
+            state = dfa.getSuccessor(state);
+        }
+        return state != Automaton.NO_STATE && visited.cardinality() == dfa.getTotalStates();
+    }
+
+    // Computes the canonical minimal form of the language of a unary DFA; states not reachable from
+    // the start state are ignored and a missing transition leads to a rejecting sink
+    public static LassoForm minimize(Automaton dfa) {
+        // Walk from the start state until a state repeats, remembering the step at which each state was seen
+        int[] visitedAt = new int[Math.max(dfa.getTotalStates(), 1)];
+        Arrays.fill(visitedAt, -1);
+        BitSet accepting = new BitSet();
+        int steps = 0;
+        int state = 0;
+        while (state != Automaton.NO_STATE && visitedAt[state] < 0) {
+            visitedAt[state] = steps;
+            if (dfa.isEndState(state)) {
+                accepting.set(steps);
+            }
+            steps++;
+            state = dfa.getSuccessor(state);
+        }
+        int tailLength;
+        int cycleLength;
+        if (state == Automaton.NO_STATE) {
+            // The path runs into a missing transition: close it with a rejecting one-state cycle
+            tailLength = steps;
+            cycleLength = 1;
+        } else {
+            tailLength = visitedAt[state];
+            cycleLength = steps - tailLength;
+        }
+        return reduce(tailLength, cycleLength, accepting);
+    }
+
+    // Reduces a lasso given by its tail length, cycle length and accepting positions to its canonical
+    // minimal form; the bitset is taken over
+    static LassoForm reduce(int tailLength, int cycleLength, BitSet accepting) {
+        long[] bits = accepting.toLongArray();
+        long shape = reduceInPlace(tailLength, cycleLength, bits, bits.length, Workspace.current());
+        return new LassoForm((int) (shape >>> 32), (int) shape, BitSet.valueOf(bits));
+    }
+
+    // Like reduce, for accepting positions given as the first words of a bit array, but only returns
+    // the (states, endStates) key of the minimal form and allocates nothing. The array is modified
+    static long reduceKey(int tailLength, int cycleLength, long[] accepting, int words, Workspace workspace) {
+        long shape = reduceInPlace(tailLength, cycleLength, accepting, words, workspace);
+        int endStates = 0;
+        for (int i = 0; i < words; i++) {
+            endStates += Long.bitCount(accepting[i]);
+        }
+        return ComplexityHistogram.packKey((int) (shape >>> 32) + (int) shape, endStates);
+    }
+
+    // Computes the minimal form of a lasso whose accepting positions are the first words of a bit array
+    // (positions past them count as rejecting), clears the positions past the minimal form and returns
+    // tailLength << 32 | period of the minimal form
+    private static long reduceInPlace(int tailLength, int cycleLength, long[] accepting, int words,
+            Workspace workspace) {
+        int period = primitivePeriod(accepting, words, tailLength, cycleLength, workspace.ints(cycleLength));
+
+        // A tail state is redundant when it behaves like the state one period further, which is the
+        // last state of the cycle once the cycle starts right after it
+        while (tailLength > 0
+                && get(accepting, words, tailLength - 1) == get(accepting, words, tailLength - 1 + period)) {
+            tailLength--;
+        }
+        int end = tailLength + period;
+        if ((end >>> 6) < words) {
+            accepting[end >>> 6] &= (1L << end) - 1;
+            for (int i = (end >>> 6) + 1; i < words; i++) {
+                accepting[i] = 0;
+            }
+        }
+        return (long) tailLength << 32 | period;
+    }
+
+    // Returns the smallest period p dividing the cycle length such that the cycle's accepting pattern
+    // repeats every p states, using the prefix function of the pattern
+    private static int primitivePeriod(long[] accepting, int words, int offset, int length, int[] prefix) {
+        prefix[0] = 0;
+        for (int i = 1; i < length; i++) {
+            int k = prefix[i - 1];
+            boolean current = get(accepting, words, offset + i);
+            while (k > 0 && get(accepting, words, offset + k) != current) {
+                k = prefix[k - 1];
+            }
+            if (get(accepting, words, offset + k) == current) {
+                k++;
+            }
+            prefix[i] = k;
+        }
+        int period = length - prefix[length - 1];
+        return length % period == 0 ? period : length;
+    }
+
+    private static boolean get(long[] bits, int words, int index) {
+        int word = index >>> 6;
+        return word < words && (bits[word] >>> index & 1) != 0;
+    }
+}
@@ -0,0 +1,315 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Finds the operands whose results have the largest (states, endStates), ordered by states and then by
+// end states, without evaluating every pair. Operands are taken once per language class (see
+// LanguageClasses) and grouped by the shape of their canonical forms: tail length t, cycle length c,
+// the smallest and largest accepting offsets in the cycle, and whether the tail accepts anything. Each
+// pair of shapes gets an upper bound on the states of any result. The shape pairs are visited in
+// decreasing order of that bound, and the search stops at the first one whose bound cannot beat the
+// k-th best result found so far.
+//
+// Bounds for concatenation A.B with A = (t1, c1), B = (t2, c2), L = lcm(c1, c2), g = gcd(c1, c2):
+//   - an empty operand gives the empty language: 1 state
+//   - two finite languages: the longest word has length t1 + t2 - 2, so at most t1 + t2 states
+//   - A finite, B infinite: every i + B with a^i in A is periodic with period c2 from i + t2, so at
+//     most (t1 - 1) + t2 + c2 states (and symmetrically)
+//   - both infinite: the sums of an accepting cycle offset r1 of A and r2 of B contain every number
+//     congruent to t1 + t2 + r1 + r2 modulo g from t1 + t2 + r1 + r2 + L - c1 - c2 + g on (the Frobenius
+//     number of c1/g and c2/g, scaled by g). The words using a tail word of A are periodic with period
+//     c2 from t1 + t2 - 1 on, and those using a tail word of B with period c1. With g = 1 the first pair
+//     of offsets already covers every larger number, so the result ends in a 1-cycle; otherwise its
+//     cycle divides lcm(g, c2 if A's tail accepts, c1 if B's tail accepts) once all offset pairs have
+//     started.
+// Square uses the same bound with B = A. Intersection, union and difference have at most
+// max(t1, t2) + L states, the product the engine reduces, and the complement exactly t + c. Plus has no
+// cheap bound of this kind, and its candidates are single automata, so all of them are evaluated.
+class WitnessSearch {
+
+    // One of the best results: representatives of the operand classes (second is null for unary
+    // operations) and the canonical form of the result
+    static final class Witness {
+        private final Automaton first;
+        private final Automaton second;
+        private final LassoForm result;
+
+        Witness(Automaton first, Automaton second, LassoForm result) {
+            this.first = first;
+            this.second = second;
+            this.result = result;
+        }
+
+        public Automaton getFirst() {
+            return first;
+        }
+
+        public Automaton getSecond() {
+            return second;
+        }
+
+        public LassoForm getResult() {
+            return result;
+        }
+    }
+
+    // The features of a canonical form used by the bounds, and the classes sharing them
+    private static final class Shape {
+        final int tail;
+        final int cycle;
+        // Smallest and largest accepting offsets within the cycle, -1 for finite languages
+        final int minOffset;
+        final int maxOffset;
+        final boolean acceptingTail;
+        final List<Integer> classes = new ArrayList<>();
+
+        Shape(LassoForm form) {
+            tail = form.getTailLength();
+            cycle = form.getCycleLength();
+            int min = -1;
+            int max = -1;
+            for (int offset = 0; offset < cycle; offset++) {
+                if (form.isAccepting(tail + offset)) {
+                    min = min < 0 ? offset : min;
+                    max = offset;
+                }
+            }
+            minOffset = min;
+            maxOffset = max;
+            boolean accepts = false;
+            for (int state = 0; state < tail && !accepts; state++) {
+                accepts = form.isAccepting(state);
+            }
+            acceptingTail = accepts;
+        }
+
+        List<Integer> key() {
+            return List.of(tail, cycle, minOffset, maxOffset, acceptingTail ? 1 : 0);
+        }
+
+        boolean isFinite() {
+            return maxOffset < 0;
+        }
+
+        boolean isEmpty() {
+            return isFinite() && !acceptingTail;
+        }
+    }
+
+    private final OperationType operation;
+    private final int k;
+    private final LanguageClasses classes;
+    private final List<Shape> shapes = new ArrayList<>();
+    private long evaluated;
+    private long candidates;
+
+    // Groups the automata by language and shape; k is the number of witnesses to find
+    public WitnessSearch(List<Automaton> automata, OperationType operation, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("At least one witness must be searched: " + k);
+        }
+        this.operation = operation;
+        this.k = k;
+        long start = Instrumentation.start();
+        this.classes = new LanguageClasses(automata);
+        Map<List<Integer>, Shape> byKey = new HashMap<>();
+        for (int i = 0; i < classes.getClassCount(); i++) {
+            Shape shape = new Shape(classes.getForm(i));
+            Shape existing = byKey.putIfAbsent(shape.key(), shape);
+            (existing == null ? shape : existing).classes.add(i);
+        }
+        shapes.addAll(byKey.values());
+        shapes.sort(Comparator.comparing(Shape::key, WitnessSearch::compareKeys));
+        Instrumentation.end(Instrumentation.Phase.MINIMIZATION, start);
+    }
+
+    // Returns the k best results in decreasing order of (states, endStates); ties keep the result found
+    // first. Fewer are returned if there are fewer candidates.
+    public List<Witness> search() {
+        long start = Instrumentation.start();
+        long[] shapePairs = shapePairs();
+        // Ascending by key and, among equal keys, later results first, so the head is the k-th best once k
+        // results are kept and the one to drop for a better result
+        PriorityQueue<long[]> best = new PriorityQueue<>(Comparator.comparingLong((long[] entry) -> entry[0])
+                .thenComparing(Comparator.comparingLong((long[] entry) -> entry[3]).reversed()));
+        Workspace workspace = Workspace.current();
+        for (int p = shapePairs.length - 1; p >= 0; p--) {
+            long bound = shapePairs[p] >>> 32;
+            if (best.size() == k && ComplexityHistogram.packKey((int) bound, (int) bound) <= best.peek()[0]) {
+                break;
+            }
+            Shape first = shapes.get((int) (shapePairs[p] >>> 16 & 0xFFFF));
+            Shape second = shapes.get((int) (shapePairs[p] & 0xFFFF));
+            for (int i : first.classes) {
+                if (!operation.isBinary()) {
+                    offer(best, i, -1, UnaryComplexityEngine.key(operation, classes.getForm(i), null, workspace));
+                    continue;
+                }
+                for (int j : second.classes) {
+                    if (first == second && operation.isCommutative() && j < i) {
+                        continue;
+                    }
+                    offer(best, i, j, UnaryComplexityEngine.key(operation, classes.getForm(i), classes.getForm(j),
+                            workspace));
+                }
+            }
+        }
+        Instrumentation.end(Instrumentation.Phase.OPERATION, start);
+
+        List<long[]> entries = new ArrayList<>(best);
+        // Decreasing key; among equal keys the earlier result first
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(a[3], b[3]));
+        List<Witness> witnesses = new ArrayList<>();
+        for (long[] entry : entries) {
+            int i = (int) entry[1];
+            int j = (int) entry[2];
+            LassoForm result = UnaryComplexityEngine.apply(operation, classes.getForm(i), j < 0 ? null : classes.getForm(j));
+            witnesses.add(new Witness(classes.getRepresentative(i), j < 0 ? null : classes.getRepresentative(j), result));
+        }
+        return witnesses;
+    }
+
+    // Returns the number of language classes of the automata
+    public int getClassCount() {
+        return classes.getClassCount();
+    }
+
+    // Returns the number of candidates (class pairs, or classes for unary operations) and how many the
+    // last search evaluated
+    public long getCandidates() {
+        return candidates;
+    }
+
+    public long getEvaluated() {
+        return evaluated;
+    }
+
+    // Keeps a result if it is among the k best so far; entries are {key, first, second, sequence}
+    private void offer(PriorityQueue<long[]> best, int first, int second, long key) {
+        evaluated++;
+        if (best.size() < k) {
+            best.add(new long[] { key, first, second, evaluated });
+        } else if (key > best.peek()[0]) {
+            best.poll();
+            best.add(new long[] { key, first, second, evaluated });
+        }
+    }
+
+    // Returns every pair of shapes (every shape for unary operations) as bound << 32 | first << 16 |
+    // second, sorted ascending
+    private long[] shapePairs() {
+        if (shapes.size() > 0xFFFF) {
+            throw new IllegalStateException("Too many shapes for the search: " + shapes.size());
+        }
+        List<Long> pairs = new ArrayList<>();
+        candidates = 0;
+        for (int a = 0; a < shapes.size(); a++) {
+            Shape first = shapes.get(a);
+            if (!operation.isBinary()) {
+                pairs.add((long) bound(first, first) << 32 | (long) a << 16 | a);
+                candidates += first.classes.size();
+                continue;
+            }
+            for (int b = operation.isCommutative() ? a : 0; b < shapes.size(); b++) {
+                Shape second = shapes.get(b);
+                pairs.add((long) bound(first, second) << 32 | (long) a << 16 | b);
+                long n = first.classes.size();
+                candidates += a == b && operation.isCommutative() ? n * (n + 1) / 2 : n * second.classes.size();
+            }
+        }
+        long[] sorted = new long[pairs.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = pairs.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // Upper bound on the states of the minimal DFA of the operation on any operands of the two shapes,
+    // capped to fit the packed pair
+    private int bound(Shape first, Shape second) {
+        long bound;
+        switch (operation) {
+            case SQUARE:
+                bound = concatenationBound(first, first);
+                break;
+            case CONCATENATION:
+                bound = concatenationBound(first, second);
+                break;
+            case INTERSECTION:
+            case UNION:
+            case DIFFERENCE:
+                bound = Math.max(first.tail, second.tail) + lcm(first.cycle, second.cycle);
+                break;
+            case COMPLEMENT:
+                bound = first.tail + first.cycle;
+                break;
+            default:
+                bound = Integer.MAX_VALUE;
+                break;
+        }
+        return (int) Math.min(bound, Integer.MAX_VALUE);
+    }
+
+    private static long concatenationBound(Shape first, Shape second) {
+        if (first.isEmpty() || second.isEmpty()) {
+            return 1;
+        }
+        if (first.isFinite() && second.isFinite()) {
+            return first.tail + second.tail;
+        }
+        if (first.isFinite()) {
+            return first.tail - 1 + second.tail + second.cycle;
+        }
+        if (second.isFinite()) {
+            return second.tail - 1 + first.tail + first.cycle;
+        }
+        long gcd = gcd(first.cycle, second.cycle);
+        long lcm = lcm(first.cycle, second.cycle);
+        long frobenius = lcm - first.cycle - second.cycle + gcd;
+        long onset;
+        long period;
+        if (gcd == 1) {
+            onset = first.tail + second.tail + first.minOffset + second.minOffset + frobenius;
+            period = 1;
+        } else {
+            onset = first.tail + second.tail + first.maxOffset + second.maxOffset + frobenius;
+            period = gcd;
+            if (first.acceptingTail) {
+                period = lcm(period, second.cycle);
+            }
+            if (second.acceptingTail) {
+                period = lcm(period, first.cycle);
+            }
+        }
+        return Math.max(onset, first.tail + second.tail - 1) + period;
+    }
+
+    // Orders shape keys lexicographically, so that the search order does not depend on hashing
+    private static int compareKeys(List<Integer> a, List<Integer> b) {
+        for (int i = 0; i < a.size(); i++) {
+            int c = Integer.compare(a.get(i), b.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static long lcm(long a, long b) {
+        return a / gcd(a, b) * b;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long r = a % b;
+            a = b;
+            b = r;
+        }
+        return a;
+    }
+}
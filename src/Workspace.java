@@ -0,0 +1,46 @@
+import java.util.Arrays;
+
+// Per-thread scratch buffers for the all-pairs loops. The buffers only grow, so once a thread has
+// seen the largest operands of a run, computing further results allocates nothing. A buffer is only
+// valid until the next request for the same slot on the same thread, so callers must not keep it.
+final class Workspace {
+
+    // Bit buffers used by UnaryComplexityEngine
+    static final int SECOND_OPERAND = 0;
+    static final int REPEATED = 1;
+    static final int RESULT = 2;
+    private static final int SLOTS = 3;
+
+    private static final ThreadLocal<Workspace> CURRENT = ThreadLocal.withInitial(Workspace::new);
+
+    private final long[][] words = new long[SLOTS][0];
+    private int[] ints = new int[0];
+
+    private Workspace() {
+    }
+
+    // Returns the calling thread's workspace
+    static Workspace current() {
+        return CURRENT.get();
+    }
+
+    // Returns the bit buffer of a slot with at least count words, the first count of them cleared
+    long[] words(int slot, int count) {
+        long[] buffer = words[slot];
+        if (buffer.length < count) {
+            buffer = new long[Math.max(count, buffer.length * 2)];
+            words[slot] = buffer;
+        } else {
+            Arrays.fill(buffer, 0, count, 0L);
+        }
+        return buffer;
+    }
+
+    // Returns an int buffer with at least count entries of unspecified content
+    int[] ints(int count) {
+        if (ints.length < count) {
+            ints = new int[Math.max(count, ints.length * 2)];
+        }
+        return ints;
+    }
+}